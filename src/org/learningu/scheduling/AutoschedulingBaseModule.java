@@ -10,6 +10,7 @@ import org.learningu.scheduling.graph.ProgramCacheFlags;
 import org.learningu.scheduling.logic.LocalConflictLogic;
 import org.learningu.scheduling.logic.ScheduleValidator;
 import org.learningu.scheduling.optimization.ConcurrentOptimizer;
+import org.learningu.scheduling.schedule.Schedule;
 
 import edu.uchicago.lowasser.flaginjection.Flags;
 
@@ -28,6 +29,7 @@ public final class AutoschedulingBaseModule extends AbstractModule {
         ConcurrentOptimizer.class,
         Autoscheduling.class,
         ScheduleValidator.class,
+        Schedule.Factory.class,
         LocalConflictLogic.class,
         Autoscheduler.class,
         AutoschedulerDataSource.class,
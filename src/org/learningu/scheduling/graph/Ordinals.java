@@ -0,0 +1,54 @@
+package org.learningu.scheduling.graph;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A dense numbering {@code 0, 1, ..., size() - 1} of a fixed collection of program objects, so that
+ * state associated with each object can be kept in flat arrays instead of hash maps. Each
+ * {@link ProgramObject} also remembers its own ordinal, so looking it up does not need to hash it.
+ * Other values, such as courses, which are created anew by {@link Section#getCourse}, are looked up
+ * by hash.
+ *
+ * @author lowasser
+ */
+final class Ordinals<T> {
+  private final ImmutableList<T> values;
+  private final ImmutableMap<T, Integer> ordinals;
+
+  Ordinals(Iterable<? extends T> values) {
+    this.values = ImmutableList.copyOf(values);
+    ImmutableMap.Builder<T, Integer> builder = ImmutableMap.builder();
+    for (int i = 0; i < this.values.size(); i++) {
+      T value = this.values.get(i);
+      if (value instanceof ProgramObject) {
+        ((ProgramObject<?>) value).ordinal = i;
+      }
+      builder.put(value, i);
+    }
+    this.ordinals = builder.build();
+  }
+
+  int ordinal(T value) {
+    if (value instanceof ProgramObject) {
+      int cached = ((ProgramObject<?>) value).ordinal;
+      if (cached >= 0 && cached < values.size() && values.get(cached) == value) {
+        return cached;
+      }
+    }
+    // an equal object that was not the one numbered, e.g. one built outside the program
+    Integer ordinal = ordinals.get(value);
+    checkArgument(ordinal != null, "%s is not part of this program", value);
+    return ordinal;
+  }
+
+  T get(int ordinal) {
+    return values.get(ordinal);
+  }
+
+  int size() {
+    return values.size();
+  }
+}
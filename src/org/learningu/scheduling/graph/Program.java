@@ -5,7 +5,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
-import com.google.common.base.Functions;
 import com.google.common.base.Objects;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -23,12 +22,14 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.protobuf.TextFormat;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -78,6 +79,45 @@ public final class Program {
 
   private final ImmutableSetMultimap<Teacher, Course> teachingMap;
 
+  private final ImmutableSetMultimap<Course, Course> dependentCourses;
+
+  private final ImmutableListMultimap<Teacher, Section> sectionsForTeacher;
+
+  /**
+   * For each section, by ordinal, the set of ordinals of the sections that share a teacher with it.
+   */
+  private final BitSet[] sectionConflicts;
+
+  private final Ordinals<ClassPeriod> periodOrdinals;
+
+  private final Ordinals<Subject> subjectOrdinals;
+
+  private final Ordinals<Room> roomOrdinals;
+
+  private final Ordinals<Section> sectionOrdinals;
+
+  private final Ordinals<Teacher> teacherOrdinals;
+
+  private final Ordinals<TeacherGroup> teacherGroupOrdinals;
+
+  private final Ordinals<Resource> resourceOrdinals;
+
+  private final Ordinals<TimeBlock> timeBlockOrdinals;
+
+  private final Ordinals<Course> courseOrdinals;
+
+  /**
+   * For each time block, by ordinal, the mask of its lunch periods: bit {@code i} is set if the
+   * period with index {@code i} in the block is a lunch period. This is zero for blocks with a lunch
+   * period too late to fit in the mask.
+   */
+  private final int[] lunchMasks;
+
+  /**
+   * The ordinals of the time blocks whose lunch periods do not all fit in a mask.
+   */
+  private final BitSet unmaskedLunchBlocks;
+
   private final SerialProgram serial;
   
   private final ImmutableBiMap<String, Room> roomsByName;
@@ -178,6 +218,15 @@ public final class Program {
     }
     teachingMap = teachingMapBuilder.build();
 
+    ImmutableListMultimap.Builder<Teacher, Section> sectionsForTeacherBuilder =
+        ImmutableListMultimap.builder();
+    for (Teacher t : teachingMap.keySet()) {
+      for (Course c : teachingMap.get(t)) {
+        sectionsForTeacherBuilder.putAll(t, courseMap.get(c));
+      }
+    }
+    sectionsForTeacher = sectionsForTeacherBuilder.build();
+
     ImmutableListMultimap.Builder<TeacherGroup, Teacher> teacherGroupMembersBuilder =
         ImmutableListMultimap.builder();
     for (Teacher t : getTeachers()) {
@@ -187,6 +236,56 @@ public final class Program {
     }
     teacherGroupMembers = teacherGroupMembersBuilder.build();
 
+    // initialize dependentCourses, the inverse of the prerequisite relation
+    ImmutableSetMultimap.Builder<Course, Course> dependentCoursesBuilder =
+        ImmutableSetMultimap.builder();
+    for (Course course : getCourses()) {
+      for (Course prereq : course.getPrerequisites()) {
+        dependentCoursesBuilder.put(prereq, course);
+      }
+    }
+    dependentCourses = dependentCoursesBuilder.build();
+
+    // periods are numbered in chronological order, so ordinals compare like the periods themselves
+    periodOrdinals = new Ordinals<ClassPeriod>(Ordering.natural().sortedCopy(getPeriods()));
+    subjectOrdinals = new Ordinals<Subject>(getSubjects());
+    roomOrdinals = new Ordinals<Room>(getRooms());
+    sectionOrdinals = new Ordinals<Section>(getSections());
+    teacherOrdinals = new Ordinals<Teacher>(getTeachers());
+    teacherGroupOrdinals = new Ordinals<TeacherGroup>(teacherGroups.values());
+    resourceOrdinals = new Ordinals<Resource>(getResources());
+    timeBlockOrdinals = new Ordinals<TimeBlock>(getTimeBlocks());
+    courseOrdinals = new Ordinals<Course>(getCourses());
+
+    lunchMasks = new int[getTimeBlocks().size()];
+    unmaskedLunchBlocks = new BitSet(getTimeBlocks().size());
+    for (TimeBlock block : getTimeBlocks()) {
+      int mask = 0;
+      for (ClassPeriod period : block.getPeriods()) {
+        if (period.isLunch()) {
+          if (period.getIndex() >= Integer.SIZE) {
+            unmaskedLunchBlocks.set(getOrdinal(block));
+            mask = 0;
+            break;
+          }
+          mask |= 1 << period.getIndex();
+        }
+      }
+      lunchMasks[getOrdinal(block)] = mask;
+    }
+
+    // initialize sectionConflicts, the graph of sections that cannot run at the same time
+    sectionConflicts = new BitSet[getSections().size()];
+    for (Section s : getSections()) {
+      BitSet row = new BitSet(getSections().size());
+      for (Teacher t : s.getTeachers()) {
+        for (Section other : sectionsForTeacher.get(t)) {
+          row.set(getOrdinal(other));
+        }
+      }
+      sectionConflicts[getOrdinal(s)] = row;
+    }
+
     checkTeachersValid();
     checkCoursesValid();
     checkRoomsValid();
@@ -362,6 +461,13 @@ public final class Program {
     return prerequisites.getUnchecked(course);
   }
 
+  /**
+   * Returns the courses that list {@code course} as a prerequisite.
+   */
+  public Set<Course> getDependentCourses(Course course) {
+    return dependentCourses.get(course);
+  }
+
   public List<Teacher> teachersFor(Section section) {
     return teachersFor(section.getCourse());
   }
@@ -416,6 +522,113 @@ public final class Program {
     return section;
   }
 
+  /**
+   * Returns the position of {@code period} in a dense numbering of the periods in this program, in
+   * chronological order, between 0 (inclusive) and {@code getPeriods().size()} (exclusive).
+   */
+  public int getOrdinal(ClassPeriod period) {
+    return periodOrdinals.ordinal(period);
+  }
+
+  public ClassPeriod getPeriodByOrdinal(int ordinal) {
+    return periodOrdinals.get(ordinal);
+  }
+
+  /**
+   * Returns the position of {@code subject} in a dense numbering of the subjects in this program,
+   * between 0 (inclusive) and {@code getSubjects().size()} (exclusive).
+   */
+  public int getOrdinal(Subject subject) {
+    return subjectOrdinals.ordinal(subject);
+  }
+
+  /**
+   * Returns the position of {@code room} in a dense numbering of the rooms in this program, between
+   * 0 (inclusive) and {@code getRooms().size()} (exclusive).
+   */
+  public int getOrdinal(Room room) {
+    return roomOrdinals.ordinal(room);
+  }
+
+  public Room getRoomByOrdinal(int ordinal) {
+    return roomOrdinals.get(ordinal);
+  }
+
+  /**
+   * Returns the position of {@code section} in a dense numbering of the sections in this program,
+   * between 0 (inclusive) and {@code getSections().size()} (exclusive).
+   */
+  public int getOrdinal(Section section) {
+    return sectionOrdinals.ordinal(section);
+  }
+
+  public Section getSectionByOrdinal(int ordinal) {
+    return sectionOrdinals.get(ordinal);
+  }
+
+  /**
+   * Returns the position of {@code teacher} in a dense numbering of the teachers in this program,
+   * between 0 (inclusive) and {@code getTeachers().size()} (exclusive).
+   */
+  public int getOrdinal(Teacher teacher) {
+    return teacherOrdinals.ordinal(teacher);
+  }
+
+  /**
+   * Returns the position of {@code group} in a dense numbering of all the teacher groups in this
+   * program, including any without members, between 0 (inclusive) and
+   * {@link #getTeacherGroupCount} (exclusive).
+   */
+  public int getOrdinal(TeacherGroup group) {
+    return teacherGroupOrdinals.ordinal(group);
+  }
+
+  public int getTeacherGroupCount() {
+    return teacherGroups.size();
+  }
+
+  /**
+   * Returns the position of {@code resource} in a dense numbering of all the resources in this
+   * program, between 0 (inclusive) and {@code getResources().size()} (exclusive).
+   */
+  public int getOrdinal(Resource resource) {
+    return resourceOrdinals.ordinal(resource);
+  }
+
+  /**
+   * Returns the position of {@code course} in a dense numbering of the courses in this program,
+   * between 0 (inclusive) and {@code getCourses().size()} (exclusive).
+   */
+  public int getOrdinal(Course course) {
+    return courseOrdinals.ordinal(course);
+  }
+
+  /**
+   * Returns the position of {@code block} in a dense numbering of all the time blocks in this
+   * program, between 0 (inclusive) and {@code getTimeBlocks().size()} (exclusive).
+   */
+  public int getOrdinal(TimeBlock block) {
+    return timeBlockOrdinals.ordinal(block);
+  }
+
+  /**
+   * Returns whether the lunch periods of {@code block} are described by {@link #getLunchMask}, which
+   * is the case unless one of them is past the 32nd period of the block.
+   */
+  public boolean hasLunchMask(TimeBlock block) {
+    return !unmaskedLunchBlocks.get(getOrdinal(block));
+  }
+
+  /**
+   * Returns the mask of the lunch periods in {@code block}, with bit {@code i} set if the period
+   * with index {@code i} in the block is a lunch period. This is zero if the block does not
+   * {@linkplain #hasLunchMask have a lunch mask}, in which case its periods must be checked
+   * individually.
+   */
+  public int getLunchMask(TimeBlock block) {
+    return lunchMasks[getOrdinal(block)];
+  }
+
   public List<TeacherGroup> getGroups(Teacher t) {
     return teacherMembership.getUnchecked(t);
   }
@@ -468,9 +681,15 @@ public final class Program {
 
   public Iterable<Section> getSectionsForTeacher(Teacher t) {
     checkArgument(teachers.containsValue(t));
-    return Iterables.concat(Iterables.transform(
-        teachingMap.get(t),
-        Functions.forMap(courseMap.asMap())));
+    return sectionsForTeacher.get(t);
+  }
+
+  /**
+   * Returns whether sections {@code a} and {@code b} have a teacher in common, so that they cannot
+   * run at the same time. A section with any teachers has a teacher in common with itself.
+   */
+  public boolean sharesTeacher(Section a, Section b) {
+    return sectionConflicts[getOrdinal(a)].get(getOrdinal(b));
   }
 
   public Set<Teacher> getTeachers() {
@@ -27,6 +27,12 @@ public abstract class ProgramObject<T extends Message & MessageOrBuilder> {
   final Program program;
   final T serial;
 
+  /**
+   * This object's position in its program's numbering of objects of its kind, or -1 if it has
+   * none. Set once while the program is built.
+   */
+  int ordinal = -1;
+
   ProgramObject(Program program, T serial) {
     this.program = checkNotNull(program);
     this.serial = checkNotNull(serial);
@@ -8,16 +8,21 @@ import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
 
 /**
- * A schedule logic that applies several sub-logics in sequence.
+ * A schedule logic that applies several sub-logics in sequence, stopping early if the validator
+ * {@linkplain ScheduleValidator#isDone is done}.
  * 
  * @author lowasser
  */
 public final class ChainedScheduleLogic extends ScheduleLogic {
+  private static final Logger logger =
+      Logger.getLogger("org.learningu.scheduling.logic.ChainedScheduleLogic");
+
   public static ChainedScheduleLogic create(ScheduleLogic... logics) {
     return new ChainedScheduleLogic(Arrays.asList(logics));
   }
@@ -39,6 +44,9 @@ public final class ChainedScheduleLogic extends ScheduleLogic {
       return;
     }
     for (ScheduleLogic logic : logics) {
+      if (validator.isDone()) {
+        break;
+      }
       logic.validate(validator, schedule, assignment);
     }
   }
@@ -51,12 +59,34 @@ public final class ChainedScheduleLogic extends ScheduleLogic {
       return;
     }
     for (ScheduleLogic logic : logics) {
+      if (validator.isDone()) {
+        break;
+      }
       logic.validate(validator, schedule, assignment);
     }
-    Logger.getLogger("org.learningu.scheduling.logic.ChainedScheduleLogic").log(
-        Level.FINEST,
-        "Chained schedule logic: {0}",
-        validator);
+    if (logger.isLoggable(Level.FINEST)) {
+      logger.log(Level.FINEST, "Chained schedule logic: {0}", validator);
+    }
+  }
+
+  @Override
+  public boolean isStaticallyFeasible(Program program, StartAssignment assignment) {
+    for (ScheduleLogic logic : logics) {
+      if (!logic.isStaticallyFeasible(program, assignment)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean isStaticallyFeasible(Program program, PresentAssignment assignment) {
+    for (ScheduleLogic logic : logics) {
+      if (!logic.isStaticallyFeasible(program, assignment)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
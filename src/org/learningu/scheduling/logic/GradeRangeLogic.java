@@ -2,19 +2,32 @@ package org.learningu.scheduling.logic;
 
 import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Course;
+import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.Schedule;
 
 public final class GradeRangeLogic extends ScheduleLogic {
+  private static boolean gradesAllowed(PresentAssignment assignment) {
+    ClassPeriod period = assignment.getPeriod();
+    Course course = assignment.getCourse();
+    return period.getGradeRange().encloses(course.getGradeRange());
+  }
+
+  @Override
+  public boolean isStaticallyFeasible(Program program, PresentAssignment assignment) {
+    return gradesAllowed(assignment);
+  }
+
   @Override
   public
       void
       validate(ScheduleValidator validator, Schedule schedule, PresentAssignment assignment) {
     super.validate(validator, schedule, assignment);
-    ClassPeriod period = assignment.getPeriod();
-    Course course = assignment.getCourse();
+    if (schedule.isStaticallyFeasible(assignment.getStartAssignment())) {
+      return;
+    }
     validator.validateLocal(
-        period.getGradeRange().encloses(course.getGradeRange()),
+        gradesAllowed(assignment),
         assignment,
         "Classes must be scheduled during periods that allow each of the appropriate grades");
   }
@@ -32,12 +32,38 @@ public final class LocalConflictLogic extends ScheduleLogic {
       optional = true)
   private double minClassCapRatio = 0.9;
 
+  private static double classSizeRatio(StartAssignment assignment) {
+    Section course = assignment.getSection();
+    Room room = assignment.getRoom();
+    return ((double) room.getCapacity()) / course.getMaxClassSize();
+  }
+
+  private static boolean teachersAvailable(Program program, PresentAssignment assignment) {
+    return program.compatiblePeriods(assignment.getSection()).contains(assignment.getPeriod());
+  }
+
+  private static boolean roomAvailable(Program program, PresentAssignment assignment) {
+    return program.compatiblePeriods(assignment.getRoom()).contains(assignment.getPeriod());
+  }
+
+  @Override
+  public boolean isStaticallyFeasible(Program program, StartAssignment assignment) {
+    double classSizeRatio = classSizeRatio(assignment);
+    return classSizeRatio <= maxClassCapRatio && classSizeRatio >= minClassCapRatio;
+  }
+
+  @Override
+  public boolean isStaticallyFeasible(Program program, PresentAssignment assignment) {
+    return teachersAvailable(program, assignment) && roomAvailable(program, assignment);
+  }
+
   @Override
   public void validate(ScheduleValidator validator, Schedule schedule, StartAssignment assignment) {
     super.validate(validator, schedule, assignment);
-    Section course = assignment.getSection();
-    Room room = assignment.getRoom();
-    double classSizeRatio = ((double) room.getCapacity()) / course.getMaxClassSize();
+    if (schedule.isStaticallyFeasible(assignment)) {
+      return;
+    }
+    double classSizeRatio = classSizeRatio(assignment);
     validator.validateLocal(
         classSizeRatio <= maxClassCapRatio,
         assignment,
@@ -53,13 +79,16 @@ public final class LocalConflictLogic extends ScheduleLogic {
       void
       validate(ScheduleValidator validator, Schedule schedule, PresentAssignment assignment) {
     super.validate(validator, schedule, assignment);
+    if (schedule.isStaticallyFeasible(assignment.getStartAssignment())) {
+      return;
+    }
     Program program = schedule.getProgram();
     validator.validateLocal(
-        program.compatiblePeriods(assignment.getSection()).contains(assignment.getPeriod()),
+        teachersAvailable(program, assignment),
         assignment,
         "All teachers for a course must be available during all periods in which it is scheduled");
     validator.validateLocal(
-        program.compatiblePeriods(assignment.getRoom()).contains(assignment.getPeriod()),
+        roomAvailable(program, assignment),
         assignment,
         "Courses cannot be scheduled to rooms while the room is unavailable");
   }
@@ -1,38 +1,114 @@
 package org.learningu.scheduling.logic;
 
-import static com.google.common.base.Preconditions.checkState;
-
 import com.google.inject.Inject;
 
+import java.util.BitSet;
+import java.util.logging.Logger;
+
 import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Program;
-import org.learningu.scheduling.graph.Room;
-import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.SerialSchedules.SerialSchedule;
 import org.learningu.scheduling.schedule.SerialSchedules.SerialStartAssignment;
 import org.learningu.scheduling.schedule.StartAssignment;
 
+/**
+ * Logic keeping the locked assignments of the fixed schedule in place: a locked section may only be
+ * assigned where it was locked, and no other section may use a room during a period in which a
+ * locked section is using it.
+ *
+ * <p>The locked assignments are resolved against the program once, into an array indexed by
+ * section ordinal and a mask of locked room-period slots, so each check takes constant time. Since
+ * the checks depend only on the program, they are also folded into the schedule's table of
+ * statically feasible assignments.
+ */
 public class LockedScheduleLogic extends ScheduleLogic {
 
-  private final SerialSchedule fixed;
-  
+  private final Program program;
+
+  /**
+   * The locked assignment of each section, by section ordinal, or {@code null} if it has none.
+   */
+  private final StartAssignment[] lockedBySection;
+
+  /**
+   * The slots in use by locked assignments, at {@code roomOrdinal * nPeriods + periodOrdinal}.
+   */
+  private final BitSet lockedSlots;
+
   @Inject
-  LockedScheduleLogic(SerialSchedule schedule) {
-    this.fixed = schedule;
+  LockedScheduleLogic(Program program, SerialSchedule schedule, Logger logger) {
+    this.program = program;
+    this.lockedBySection = new StartAssignment[program.getSections().size()];
+    this.lockedSlots = new BitSet(program.getRooms().size() * program.getPeriods().size());
+    for (SerialStartAssignment serial : schedule.getAssignmentList()) {
+      if (!serial.getLocked()) {
+        continue;
+      }
+      StartAssignment assign;
+      try {
+        assign = StartAssignment.create(
+            program.getPeriod(serial.getPeriodId()),
+            program.getRoom(serial.getRoomId()),
+            program.getSection(serial.getSectionId()),
+            true);
+      } catch (IllegalStateException | IllegalArgumentException e) {
+        logger.warning("Ignoring locked assignment: " + e.getMessage());
+        continue;
+      }
+      lockedBySection[program.getOrdinal(assign.getSection())] = assign;
+      for (ClassPeriod period : assign.getPresentPeriods()) {
+        lockedSlots.set(slot(assign, period));
+      }
+    }
+  }
+
+  private int slot(StartAssignment assign, ClassPeriod period) {
+    return program.getOrdinal(assign.getRoom()) * program.getPeriods().size()
+        + program.getOrdinal(period);
+  }
+
+  private boolean keepsLockedSection(StartAssignment assign) {
+    StartAssignment locked = lockedBySection[program.getOrdinal(assign.getSection())];
+    return locked == null || locked.equals(assign);
   }
-  
+
+  /**
+   * Returns whether {@code assign}, which is not a locked assignment, avoids every locked slot.
+   */
+  private boolean avoidsLockedSlots(StartAssignment assign) {
+    for (ClassPeriod period : assign.getPresentPeriods()) {
+      if (lockedSlots.get(slot(assign, period))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isLockedAssignment(StartAssignment assign) {
+    return lockedBySection[program.getOrdinal(assign.getSection())] != null
+        && keepsLockedSection(assign);
+  }
+
+  @Override
+  public boolean isStaticallyFeasible(Program program, StartAssignment assignment) {
+    return isLockedAssignment(assignment)
+        || (keepsLockedSection(assignment) && avoidsLockedSlots(assignment));
+  }
+
   @Override
   public void validate(ScheduleValidator validator, Schedule schedule, StartAssignment assignment) {
-    Program program = schedule.getProgram();
-    for (SerialStartAssignment assign : fixed.getAssignmentList()) {
-      ClassPeriod period = program.getPeriod(assign.getPeriodId());
-      Room room = program.getRoom(assign.getRoomId());
-      Section section = program.getSection(assign.getSectionId());
-      StartAssignment realAssign = schedule.getAssignmentsBySection().get(section);
-      checkState(realAssign != null);
-      checkState(realAssign.getPeriod().equals(period));
-      checkState(realAssign.getRoom().equals(room));
+    super.validate(validator, schedule, assignment);
+    if (schedule.isStaticallyFeasible(assignment) || isLockedAssignment(assignment)) {
+      return;
     }
+    validator.validateLocal(
+        keepsLockedSection(assignment),
+        assignment,
+        "Locked section must stay where it is locked");
+    validator.validateLocal(
+        avoidsLockedSlots(assignment),
+        assignment,
+        "Room is locked at this time");
   }
 }
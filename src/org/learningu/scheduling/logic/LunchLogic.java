@@ -24,20 +24,66 @@ public class LunchLogic extends ScheduleLogic {
     // Check for this time block and the teachers for this class
     Program program = schedule.getProgram();
     TimeBlock block = assignment.getTimeBlock();
-    
+    if (!program.hasLunchMask(block)) {
+      validateByPeriod(validator, schedule, assignment);
+      return;
+    }
+    int lunches = program.getLunchMask(block);
+
+    // If there are no lunch periods intersecting with this assignment, skip the test.
+    int candidate = periodMask(assignment);
+    if ((lunches & candidate) == 0) {
+      return;
+    }
+    int otherLunches = lunches & ~candidate;
+
+    for (Teacher t : program.teachersFor(assignment.getSection())) {
+      int busy = schedule.lunchesTeaching(t, block) & otherLunches;
+      if (busy == 0 || validator.isDone()) {
+        continue;
+      }
+      List<StartAssignment> conflicts = Lists.newArrayList();
+      Map<Section, StartAssignment> sched = schedule.getAssignmentsBySection();
+      for (Section s : program.getSectionsForTeacher(t)) {
+        StartAssignment assign = sched.get(s);
+        if (assign != null && assign.getTimeBlock().equals(block)) {
+          int mask = periodMask(assign);
+          if ((busy & mask) != 0) {
+            busy &= ~mask;
+            conflicts.add(assign);
+          }
+        }
+      }
+      validator.validateGlobal(assignment, conflicts,
+          "Teacher " + t + " must have at least one lunch period in " + block);
+    }
+  }
+
+  /**
+   * Checks {@code assignment} period by period, for time blocks whose lunch periods do not fit in a
+   * mask.
+   */
+  private static void validateByPeriod(ScheduleValidator validator, Schedule schedule,
+      StartAssignment assignment) {
+    Program program = schedule.getProgram();
+    TimeBlock block = assignment.getTimeBlock();
+
     List<ClassPeriod> lunches = Lists.newArrayList();
     for (ClassPeriod period : block.getPeriods()) {
       if (period.isLunch()) {
         lunches.add(period);
       }
     }
-    
+
     // If there are no lunch periods intersecting with this assignment, skip the test.
     if (!lunches.removeAll(assignment.getPresentPeriods())) {
       return;
     }
-    
-    for (Teacher t : assignment.getCourse().getTeachers()) {
+
+    for (Teacher t : program.teachersFor(assignment.getSection())) {
+      if (!isTeachingAny(schedule, t, lunches) || validator.isDone()) {
+        continue;
+      }
       Set<ClassPeriod> myLunches = Sets.newHashSet(lunches);
       List<StartAssignment> conflicts = Lists.newArrayList();
       Map<Section, StartAssignment> sched = schedule.getAssignmentsBySection();
@@ -53,4 +99,27 @@ public class LunchLogic extends ScheduleLogic {
           "Teacher " + t + " must have at least one lunch period in " + block);
     }
   }
+
+  private static boolean isTeachingAny(Schedule schedule, Teacher t, List<ClassPeriod> periods) {
+    for (ClassPeriod period : periods) {
+      if (schedule.isTeaching(t, period)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the mask of the periods of {@code assign} in its time block, numbered as in
+   * {@link Program#getLunchMask}.
+   */
+  private static int periodMask(StartAssignment assign) {
+    if (assign.getPeriod().getIndex() >= Integer.SIZE) {
+      return 0;
+    }
+    long bits = ((1L << assign.getSection().getPeriodLength()) - 1) << assign
+        .getPeriod()
+        .getIndex();
+    return (int) bits;
+  }
 }
@@ -1,11 +1,12 @@
 package org.learningu.scheduling.logic;
 
+import com.google.common.base.Optional;
+
 import java.util.List;
 
+import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Course;
 import org.learningu.scheduling.graph.Program;
-import org.learningu.scheduling.graph.Section;
-import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
 
@@ -18,19 +19,9 @@ public final class PrerequisiteLogic extends ScheduleLogic {
     Program program = schedule.getProgram();
     List<Course> prereqs = program.getPrerequisites(assignment.getSection());
     for (Course prereq : prereqs) {
-      boolean valid = false;
-      for (Section s : program.getSectionsOfCourse(prereq)) {
-        StartAssignment sAssign = schedule.getAssignmentsBySection().get(s);
-        if (sAssign == null) {
-          continue;
-        }
-        List<PresentAssignment> sPAssigns = sAssign.getPresentAssignments();
-        PresentAssignment lastAssign = sPAssigns.get(sPAssigns.size() - 1);
-        if (lastAssign.getPeriod().compareTo(assignment.getPeriod()) < 0) {
-          valid = true;
-          break;
-        }
-      }
+      Optional<ClassPeriod> earliestEnding = schedule.earliestEnding(prereq);
+      boolean valid = earliestEnding.isPresent()
+          && earliestEnding.get().compareTo(assignment.getPeriod()) < 0;
       validator.validateLocal(valid, assignment, "Section may not start before its prerequisites");
     }
   }
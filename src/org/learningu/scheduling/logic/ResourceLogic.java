@@ -1,8 +1,6 @@
 package org.learningu.scheduling.logic;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
 import java.util.List;
@@ -12,8 +10,6 @@ import java.util.Set;
 import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.graph.Resource;
-import org.learningu.scheduling.graph.Room;
-import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
@@ -30,16 +26,25 @@ public final class ResourceLogic extends ScheduleLogic {
     this.rand = rand;
   }
 
+  private static boolean bindingResourcesRequired(Program program, StartAssignment assignment) {
+    Set<Resource> courseRequirements = program.resourceRequirements(assignment.getSection());
+    Set<Resource> bindingResources = program.bindingResources(assignment.getRoom());
+    return courseRequirements.containsAll(bindingResources);
+  }
+
+  @Override
+  public boolean isStaticallyFeasible(Program program, StartAssignment assignment) {
+    return bindingResourcesRequired(program, assignment);
+  }
+
   @Override
   public void validate(ScheduleValidator validator, Schedule schedule, StartAssignment assignment) {
     super.validate(validator, schedule, assignment);
-    Program program = schedule.getProgram();
-    Room room = assignment.getRoom();
-    Section course = assignment.getSection();
-    Set<Resource> courseRequirements = program.resourceRequirements(course);
-    Set<Resource> bindingResources = program.bindingResources(room);
+    if (schedule.isStaticallyFeasible(assignment)) {
+      return;
+    }
     validator.validateLocal(
-        courseRequirements.containsAll(bindingResources),
+        bindingResourcesRequired(schedule.getProgram(), assignment),
         assignment,
         "Room contains all binding resources");
   }
@@ -50,31 +55,19 @@ public final class ResourceLogic extends ScheduleLogic {
       validate(ScheduleValidator validator, Schedule schedule, PresentAssignment assignment) {
     super.validate(validator, schedule, assignment);
     Program program = schedule.getProgram();
-    Room room = assignment.getRoom();
-    Section course = assignment.getSection();
+    Set<Resource> roomResources = program.roomResources(assignment.getRoom());
     ClassPeriod period = assignment.getPeriod();
-    Set<Resource> courseRequirements = Sets.newHashSet(program.resourceRequirements(course));
-    courseRequirements.removeAll(program.roomResources(room));
-    if (courseRequirements.isEmpty()) {
-      return;
-    }
-
-    ListMultimap<Resource, PresentAssignment> resourceDemands = ArrayListMultimap.create();
-    for (PresentAssignment concurrent : schedule.occurringAt(period).values()) {
-      for (Resource resource : program.resourceRequirements(concurrent.getSection())) {
-        if (courseRequirements.contains(resource)) {
-          resourceDemands.put(resource, concurrent);
-        }
+    for (Resource resource : program.resourceRequirements(assignment.getSection())) {
+      if (roomResources.contains(resource)) {
+        continue;
       }
-    }
-
-    for (Resource resource : courseRequirements) {
-      List<PresentAssignment> concurrent = resourceDemands.get(resource);
+      int demand = schedule.countDemand(resource, period);
       validator.validateLocal(
-          concurrent.size() < resource.getFloatingCount(),
+          demand < resource.getFloatingCount(),
           assignment,
           "Not enough available resources");
-      if (concurrent.size() >= resource.getFloatingCount()) {
+      if (demand >= resource.getFloatingCount() && !validator.isDone()) {
+        List<PresentAssignment> concurrent = demanding(program, schedule, period, resource);
         int k = Math.min(concurrent.size(), concurrent.size() + 1 - resource.getFloatingCount());
         List<PresentAssignment> conflicts = Shuffle.shuffleK(concurrent, k, rand);
         validator.validateGlobal(assignment, conflicts, "Not enough of " + resource
@@ -82,4 +75,19 @@ public final class ResourceLogic extends ScheduleLogic {
       }
     }
   }
+
+  /**
+   * Returns the assignments taking place during {@code period} whose sections require
+   * {@code resource}.
+   */
+  private static List<PresentAssignment> demanding(Program program, Schedule schedule,
+      ClassPeriod period, Resource resource) {
+    List<PresentAssignment> demanding = Lists.newArrayList();
+    for (PresentAssignment concurrent : schedule.occurringAt(period).values()) {
+      if (program.resourceRequirements(concurrent.getSection()).contains(resource)) {
+        demanding.add(concurrent);
+      }
+    }
+    return demanding;
+  }
 }
@@ -2,6 +2,7 @@ package org.learningu.scheduling.logic;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
@@ -19,11 +20,33 @@ public abstract class ScheduleLogic {
     checkNotNull(assignment);
   }
 
+  /**
+   * Returns whether {@code assignment} passes the checks of this logic that depend only on the
+   * program, and not on the rest of the schedule. These are computed once for every possible start
+   * assignment when a schedule factory is created, so a logic's {@code validate} methods may skip
+   * them for assignments the schedule reports are {@linkplain Schedule#isStaticallyFeasible
+   * statically feasible}.
+   */
+  public boolean isStaticallyFeasible(Program program, StartAssignment assignment) {
+    return true;
+  }
+
+  /**
+   * Returns whether {@code assignment} passes the checks of this logic that depend only on the
+   * program, and not on the rest of the schedule.
+   */
+  public boolean isStaticallyFeasible(Program program, PresentAssignment assignment) {
+    return true;
+  }
+
   protected final void validatePresentAssignments(
       ScheduleValidator validator,
       Schedule schedule,
       StartAssignment assignment) {
     for (PresentAssignment present : assignment.getPresentAssignments()) {
+      if (validator.isDone()) {
+        return;
+      }
       validate(validator, schedule, present);
     }
   }
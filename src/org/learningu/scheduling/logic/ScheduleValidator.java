@@ -1,5 +1,7 @@
 package org.learningu.scheduling.logic;
 
+import static com.google.common.base.Preconditions.checkState;
+
 import com.google.common.base.Objects;
 import com.google.common.base.Objects.ToStringHelper;
 import com.google.common.collect.Iterables;
@@ -10,6 +12,8 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
+
 import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.StartAssignment;
 
@@ -19,6 +23,15 @@ import edu.uchicago.lowasser.flaginjection.Flag;
  * A cumulative validator for schedules, accumulating any conflicts found for later analysis or
  * corrective action.
  * 
+ * <p>
+ * A validator may instead be set to {@linkplain #failFast fail fast}, when only whether there is a
+ * conflict matters: it then records no conflict objects, only the first condition that failed, and
+ * {@link #isDone} tells logics that any further checks can be skipped.
+ * 
+ * <p>
+ * Validators may be {@linkplain #reset reset} and reused, so that validating an assignment with no
+ * conflicts creates no objects at all.
+ * 
  * @author lowasser
  */
 public final class ScheduleValidator {
@@ -32,6 +45,16 @@ public final class ScheduleValidator {
 
   private final Logger logger;
 
+  private boolean failFast = false;
+
+  /**
+   * The first condition that failed, if this validator fails fast.
+   */
+  @Nullable
+  private String failedCondition = null;
+
+  private boolean failedLocally = false;
+
   @Flag(
       name = "validateLogLevel",
       description = "Level at which to log each validation attempt",
@@ -44,6 +67,18 @@ public final class ScheduleValidator {
       optional = true)
   private Level failureLogLevel = Level.FINER;
 
+  /*
+   * Whether the logger would log validations and failures, checked at the first check after
+   * construction or a reset rather than on every check, so checks need not build an array of log
+   * parameters. They are not checked in the constructor, which runs before the level flags are
+   * injected.
+   */
+  private boolean logLevelsChecked = false;
+
+  private boolean logValidations;
+
+  private boolean logFailures;
+
   @Inject
   ScheduleValidator(Logger logger) {
     this.logger = logger;
@@ -53,6 +88,41 @@ public final class ScheduleValidator {
     this.globalStartConflicts = Lists.newArrayList();
   }
 
+  /**
+   * Clears any conflicts found and any {@linkplain #failFast fail-fast} mode, so that this
+   * validator can be used again, and rechecks which levels are logged at its next check. Returns
+   * this validator.
+   */
+  public ScheduleValidator reset() {
+    localStartConflicts.clear();
+    localPresentConflicts.clear();
+    globalPresentConflicts.clear();
+    globalStartConflicts.clear();
+    failFast = false;
+    failedCondition = null;
+    failedLocally = false;
+    logLevelsChecked = false;
+    return this;
+  }
+
+  private void checkLogLevels() {
+    if (!logLevelsChecked) {
+      logValidations = logger.isLoggable(validateLogLevel);
+      logFailures = logger.isLoggable(failureLogLevel);
+      logLevelsChecked = true;
+    }
+  }
+
+  private boolean logsValidations() {
+    checkLogLevels();
+    return logValidations;
+  }
+
+  private boolean logsFailures() {
+    checkLogLevels();
+    return logFailures;
+  }
+
   public List<LocalConflict<StartAssignment>> getLocalStartConflicts() {
     return localStartConflicts;
   }
@@ -69,32 +139,86 @@ public final class ScheduleValidator {
     return globalStartConflicts;
   }
 
+  /**
+   * Makes this validator stop at the first conflict, without recording it, rather than accumulate
+   * every conflict. This must be done before any validation. Returns this validator.
+   */
+  public ScheduleValidator failFast() {
+    checkState(!failFast && isValid(), "Validator is already in use");
+    failFast = true;
+    return this;
+  }
+
+  /**
+   * Returns whether this validator {@linkplain #failFast fails fast}. Its conflicts are then never
+   * recorded, so logics need not work out which assignments a global conflict is with; any
+   * non-empty set will do.
+   */
+  public boolean isFailFast() {
+    return failFast;
+  }
+
+  /**
+   * Returns whether any further validation would be wasted: that is, whether this validator fails
+   * fast and has already found a conflict.
+   */
+  public boolean isDone() {
+    return failedCondition != null;
+  }
+
+  /**
+   * Notes that {@code condition} failed. Returns whether the conflict should be recorded, which it
+   * is unless this validator fails fast.
+   */
+  private boolean fail(String condition, boolean local) {
+    if (failFast) {
+      failedCondition = condition;
+      failedLocally = local;
+      return false;
+    }
+    return true;
+  }
+
   void log(Level level, String message, Object... params) {
     logger.log(level, message, params);
   }
 
   public void validateLocal(boolean cond, StartAssignment assignment, String condition) {
-    log(
-        validateLogLevel,
-        "Doing local validation on {0} for condition: {1}",
-        assignment,
-        condition);
-    if (!cond) {
+    if (isDone()) {
+      return;
+    }
+    if (logsValidations()) {
+      log(
+          validateLogLevel,
+          "Doing local validation on {0} for condition: {1}",
+          assignment,
+          condition);
+    }
+    if (!cond && fail(condition, true)) {
       LocalConflict<StartAssignment> conflict = LocalConflict.create(assignment, condition);
-      log(failureLogLevel, "Validation failed: {0}", conflict);
+      if (logsFailures()) {
+        log(failureLogLevel, "Validation failed: {0}", conflict);
+      }
       localStartConflicts.add(conflict);
     }
   }
 
   public void validateLocal(boolean cond, PresentAssignment assignment, String condition) {
-    log(
-        validateLogLevel,
-        "Doing local validation on {0} for condition: {1}",
-        assignment,
-        condition);
-    if (!cond) {
+    if (isDone()) {
+      return;
+    }
+    if (logsValidations()) {
+      log(
+          validateLogLevel,
+          "Doing local validation on {0} for condition: {1}",
+          assignment,
+          condition);
+    }
+    if (!cond && fail(condition, true)) {
       LocalConflict<PresentAssignment> conflict = LocalConflict.create(assignment, condition);
-      log(failureLogLevel, "Validation failed: {0}", conflict);
+      if (logsFailures()) {
+        log(failureLogLevel, "Validation failed: {0}", conflict);
+      }
       localPresentConflicts.add(conflict);
     }
   }
@@ -111,17 +235,24 @@ public final class ScheduleValidator {
       StartAssignment assignment,
       Iterable<StartAssignment> conflicting,
       String condition) {
-    log(
-        validateLogLevel,
-        "Doing global validation on {0} for condition: {1}",
-        assignment,
-        condition);
-    if (!cond && !Iterables.isEmpty(conflicting)) {
+    if (isDone()) {
+      return;
+    }
+    if (logsValidations()) {
+      log(
+          validateLogLevel,
+          "Doing global validation on {0} for condition: {1}",
+          assignment,
+          condition);
+    }
+    if (!cond && !Iterables.isEmpty(conflicting) && fail(condition, false)) {
       GlobalConflict<StartAssignment> conflict = GlobalConflict.create(
           assignment,
           conflicting,
           condition);
-      log(failureLogLevel, "Validation failed: {0}", conflict);
+      if (logsFailures()) {
+        log(failureLogLevel, "Validation failed: {0}", conflict);
+      }
       globalStartConflicts.add(conflict);
     }
   }
@@ -138,32 +269,44 @@ public final class ScheduleValidator {
       PresentAssignment assignment,
       Iterable<PresentAssignment> conflicting,
       String condition) {
-    log(
-        validateLogLevel,
-        "Doing global validation on {0} for condition: {1}",
-        assignment,
-        condition);
-    if (!cond && !Iterables.isEmpty(conflicting)) {
+    if (isDone()) {
+      return;
+    }
+    if (logsValidations()) {
+      log(
+          validateLogLevel,
+          "Doing global validation on {0} for condition: {1}",
+          assignment,
+          condition);
+    }
+    if (!cond && !Iterables.isEmpty(conflicting) && fail(condition, false)) {
       GlobalConflict<PresentAssignment> conflict = GlobalConflict.create(
           assignment,
           conflicting,
           condition);
-      log(failureLogLevel, "Validation failed: {0}", conflict);
+      if (logsFailures()) {
+        log(failureLogLevel, "Validation failed: {0}", conflict);
+      }
       globalPresentConflicts.add(conflict);
     }
   }
 
   public boolean isLocallyValid() {
-    return localStartConflicts.isEmpty() && localPresentConflicts.isEmpty();
+    return !(isDone() && failedLocally) && localStartConflicts.isEmpty()
+        && localPresentConflicts.isEmpty();
   }
 
   public boolean isValid() {
-    return isLocallyValid() && globalPresentConflicts.isEmpty() && globalStartConflicts.isEmpty();
+    return !isDone() && isLocallyValid() && globalPresentConflicts.isEmpty()
+        && globalStartConflicts.isEmpty();
   }
 
   @Override
   public String toString() {
     ToStringHelper helper = Objects.toStringHelper(this);
+    if (failedCondition != null) {
+      helper.add("failedCondition", failedCondition);
+    }
     if (!localStartConflicts.isEmpty()) {
       helper.add("localStartConflicts", localStartConflicts);
     }
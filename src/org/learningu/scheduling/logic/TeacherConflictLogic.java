@@ -1,13 +1,12 @@
 package org.learningu.scheduling.logic;
 
 import com.google.common.base.Predicate;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 
+import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.graph.Teacher;
@@ -28,17 +27,20 @@ public final class TeacherConflictLogic extends ScheduleLogic {
       void
       validate(ScheduleValidator validator, Schedule schedule, PresentAssignment assignment) {
     super.validate(validator, schedule, assignment);
-    Program program = schedule.getProgram();
+    final Program program = schedule.getProgram();
+    final Section section = assignment.getSection();
+    List<Teacher> teachers = program.teachersFor(section);
+    if (!anyTeaching(schedule, teachers, assignment.getPeriod())) {
+      return;
+    }
     /*
-     * Collecting the set of all courses taught by the same teachers is more efficient than going
-     * through every teacher who is teaching a class this period.
+     * Looking up each class this period in the program's precomputed graph of sections with a
+     * teacher in common is more efficient than going through every teacher who is teaching.
      */
-    List<Teacher> teachers = program.teachersFor(assignment.getSection());
-    final Set<Section> coursesTaughtBySame = coursesTaughtByTeachers(program, teachers);
     Predicate<PresentAssignment> hasConflict = new Predicate<PresentAssignment>() {
       @Override
       public boolean apply(PresentAssignment input) {
-        return coursesTaughtBySame.contains(input.getSection());
+        return program.sharesTeacher(section, input.getSection());
       }
     };
     Collection<PresentAssignment> concurrentAssignments = schedule.occurringAt(
@@ -50,11 +52,12 @@ public final class TeacherConflictLogic extends ScheduleLogic {
         "Teachers must not be assigned to teach more than one class at a time");
   }
 
-  static Set<Section> coursesTaughtByTeachers(Program program, Iterable<Teacher> teachers) {
-    ImmutableSet.Builder<Section> builder = ImmutableSet.builder();
+  static boolean anyTeaching(Schedule schedule, Iterable<Teacher> teachers, ClassPeriod period) {
     for (Teacher t : teachers) {
-      builder.addAll(program.getSectionsForTeacher(t));
+      if (schedule.isTeaching(t, period)) {
+        return true;
+      }
     }
-    return builder.build();
+    return false;
   }
 }
@@ -1,19 +1,12 @@
 package org.learningu.scheduling.logic;
 
-import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultiset;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.ListMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multiset;
 import com.google.inject.Inject;
 
-import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 
 import org.learningu.scheduling.graph.Program;
@@ -34,45 +27,70 @@ public final class TeacherGroupCapLogic extends ScheduleLogic {
   public void validate(ScheduleValidator validator, Schedule schedule,
       PresentAssignment newAssignment) {
     Program program = schedule.getProgram();
-
-    ListMultimap<TeacherGroup, PresentAssignment> groups = ArrayListMultimap.create();
-    for (Teacher t : program.teachersFor(newAssignment.getSection())) {
-      for (TeacherGroup g : program.getGroups(t)) {
-        groups.put(g, newAssignment);
+    List<Teacher> teachers = program.teachersFor(newAssignment.getSection());
+    for (int i = 0; i < teachers.size(); i++) {
+      for (TeacherGroup g : program.getGroups(teachers.get(i))) {
+        if (countMembers(program, teachers.subList(0, i), g) > 0) {
+          // already checked for an earlier teacher
+          continue;
+        }
+        int teaching = schedule.countTeaching(g, newAssignment.getPeriod());
+        int count = teaching + countMembers(program, teachers, g);
+        if (count <= g.getCap()) {
+          continue;
+        }
+        List<PresentAssignment> conflicts;
+        if (validator.isFailFast()) {
+          // the conflicts are not recorded, so skip choosing them, but only fail if there are any
+          conflicts = (teaching > 0)
+              ? ImmutableList.of(newAssignment)
+              : ImmutableList.<PresentAssignment> of();
+        } else {
+          conflicts = chooseConflicts(program, schedule, newAssignment, g, count);
+        }
+        validator.validateGlobal(
+            newAssignment,
+            conflicts,
+            "Too many members of group " + g.getName() + " teaching at once");
       }
     }
-    Predicate<TeacherGroup> relevant = Predicates.in(ImmutableSet.copyOf(groups.keySet()));
+  }
 
-    for (PresentAssignment assign : schedule.occurringAt(newAssignment.getPeriod()).values()) {
-      for (Teacher t : program.teachersFor(assign.getSection())) {
-        for (TeacherGroup g : Iterables.filter(program.getGroups(t), relevant)) {
-          groups.put(g, assign);
-        }
+  /**
+   * Returns the number of {@code teachers} who are members of {@code g}.
+   */
+  private static int countMembers(Program program, List<Teacher> teachers, TeacherGroup g) {
+    int count = 0;
+    for (Teacher t : teachers) {
+      if (program.getGroups(t).contains(g)) {
+        count++;
       }
     }
+    return count;
+  }
 
-    for (Map.Entry<TeacherGroup, Collection<PresentAssignment>> entry : groups.asMap().entrySet()) {
-      TeacherGroup g = entry.getKey();
-      Collection<PresentAssignment> assigns = entry.getValue();
-
-      if (assigns.size() > g.getCap()) {
-        Multiset<PresentAssignment> conflicting = HashMultiset.create(assigns);
-        conflicting.elementSet().remove(newAssignment);
-        List<PresentAssignment> distinctConflicts = Lists.newArrayList(conflicting.elementSet());
-        List<PresentAssignment> deleted = Lists.newArrayList();
-        // Pick elements at random to conflict with, until we're back under the cap.
-        int newSize = assigns.size();
-        while (!distinctConflicts.isEmpty() && newSize > g.getCap()) {
-          int index = random.nextInt(distinctConflicts.size());
-          PresentAssignment toDelete = distinctConflicts.remove(index);
-          deleted.add(toDelete);
-          newSize -= conflicting.setCount(toDelete, 0);
-        }
-        validator.validateGlobal(
-            newAssignment,
-            deleted,
-            "Too many members of group " + g.getName() + " teaching at once");
+  /**
+   * Picks assignments at random to conflict with, until the number of members of {@code g}
+   * teaching is back under the cap.
+   */
+  private List<PresentAssignment> chooseConflicts(Program program, Schedule schedule,
+      PresentAssignment newAssignment, TeacherGroup g, int count) {
+    Multiset<PresentAssignment> conflicting = HashMultiset.create();
+    for (PresentAssignment assign : schedule.occurringAt(newAssignment.getPeriod()).values()) {
+      int members = countMembers(program, program.teachersFor(assign.getSection()), g);
+      if (members > 0 && !assign.equals(newAssignment)) {
+        conflicting.add(assign, members);
       }
     }
+    List<PresentAssignment> distinctConflicts = Lists.newArrayList(conflicting.elementSet());
+    List<PresentAssignment> deleted = Lists.newArrayList();
+    int newSize = count;
+    while (!distinctConflicts.isEmpty() && newSize > g.getCap()) {
+      int index = random.nextInt(distinctConflicts.size());
+      PresentAssignment toDelete = distinctConflicts.remove(index);
+      deleted.add(toDelete);
+      newSize -= conflicting.setCount(toDelete, 0);
+    }
+    return deleted;
   }
 }
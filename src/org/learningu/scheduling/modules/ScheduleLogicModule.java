@@ -47,10 +47,11 @@ public class ScheduleLogicModule extends AbstractModule {
     logicBindings.addBinding(SerialLogicImpl.GRADE_RANGES).to(GradeRangeLogic.class);
     logicBindings.addBinding(SerialLogicImpl.TEACHER_GROUP_CAP).to(TeacherGroupCapLogic.class);
     logicBindings.addBinding(SerialLogicImpl.LUNCH).to(LunchLogic.class);
+    logicBindings.addBinding(SerialLogicImpl.LOCKED).to(LockedScheduleLogic.class);
   }
 
   @Provides
-  ScheduleLogic logic(SerialLogics logics, Map<SerialLogicImpl, Provider<ScheduleLogic>> bindings, LockedScheduleLogic locked) {
+  ScheduleLogic logic(SerialLogics logics, Map<SerialLogicImpl, Provider<ScheduleLogic>> bindings) {
     List<ScheduleLogic> theLogics = Lists.newArrayList();
     for (SerialLogicImpl subLogic : logics.getLogicList()) {
       theLogics.add(bindings.get(subLogic).get());
@@ -2,16 +2,17 @@ package org.learningu.scheduling.modules;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.DiscreteDomains;
-import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multiset;
 import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Range;
 import com.google.common.collect.Sets;
@@ -33,11 +34,10 @@ import org.learningu.scheduling.graph.Course;
 import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.graph.Section;
-import org.learningu.scheduling.graph.Subject;
 import org.learningu.scheduling.graph.Teacher;
 import org.learningu.scheduling.optimization.Scorer;
-import org.learningu.scheduling.schedule.PresentAssignment;
 import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.ScheduleDelta;
 import org.learningu.scheduling.schedule.StartAssignment;
 import org.learningu.scheduling.scorers.SerialScorers.CompleteScorer;
 import org.learningu.scheduling.scorers.SerialScorers.ScaledScorer;
@@ -59,7 +59,27 @@ public final class ScorerModule extends AbstractModule {
         for (Section s : schedule.getScheduledSections()) {
           teachers.addAll(program.teachersFor(s));
         }
-        accum.add(teachers.size());
+        accum.setCount(teachers.size());
+      }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        int count = accum.getCount();
+        for (Teacher teacher : affectedTeachers(delta)) {
+          count += teachingCount(delta.getAfter(), teacher)
+              - teachingCount(delta.getBefore(), teacher);
+        }
+        accum.setCount(count);
+      }
+
+      private int teachingCount(Schedule schedule, Teacher teacher) {
+        Map<Section, StartAssignment> assignments = schedule.getAssignmentsBySection();
+        for (Section s : schedule.getProgram().getSectionsForTeacher(teacher)) {
+          if (assignments.containsKey(s)) {
+            return 1;
+          }
+        }
+        return 0;
       }
     },
     DISTINCT_COURSES_SCHEDULED {
@@ -70,13 +90,42 @@ public final class ScorerModule extends AbstractModule {
         for (Section s : schedule.getScheduledSections()) {
           courses.add(s.getCourse());
         }
-        accum.add(courses.size());
+        accum.setCount(courses.size());
+      }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        Set<Course> affected = Sets.newHashSet();
+        for (StartAssignment assign : changed(delta)) {
+          affected.add(assign.getCourse());
+        }
+        int count = accum.getCount();
+        for (Course course : affected) {
+          count += scheduledCount(delta.getAfter(), course)
+              - scheduledCount(delta.getBefore(), course);
+        }
+        accum.setCount(count);
+      }
+
+      private int scheduledCount(Schedule schedule, Course course) {
+        Map<Section, StartAssignment> assignments = schedule.getAssignmentsBySection();
+        for (Section s : schedule.getProgram().getSectionsOfCourse(course)) {
+          if (assignments.containsKey(s)) {
+            return 1;
+          }
+        }
+        return 0;
       }
     },
     SECTIONS_SCHEDULED {
       @Override
       void score(Schedule schedule, ScoreAccumulator accum) {
-        accum.add(schedule.getScheduledSections().size());
+        accum.setCount(schedule.getScheduledSections().size());
+      }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        accum.setCount(accum.getCount() + delta.getAdded().size() - delta.getRemoved().size());
       }
     },
     CLASS_HOURS_SCHEDULED {
@@ -86,6 +135,16 @@ public final class ScorerModule extends AbstractModule {
           accum.add(s.getPeriodLength());
         }
       }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        for (StartAssignment assign : delta.getRemoved()) {
+          accum.subtract(assign.getSection().getPeriodLength());
+        }
+        for (StartAssignment assign : delta.getAdded()) {
+          accum.add(assign.getSection().getPeriodLength());
+        }
+      }
     },
     STUDENT_CLASS_HOURS_SCHEDULED {
       @Override
@@ -94,36 +153,62 @@ public final class ScorerModule extends AbstractModule {
           accum.add(s.getPeriodLength() * s.getEstimatedClassSize());
         }
       }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        for (StartAssignment assign : delta.getRemoved()) {
+          Section s = assign.getSection();
+          accum.subtract(s.getPeriodLength() * s.getEstimatedClassSize());
+        }
+        for (StartAssignment assign : delta.getAdded()) {
+          Section s = assign.getSection();
+          accum.add(s.getPeriodLength() * s.getEstimatedClassSize());
+        }
+      }
     },
     BACK_TO_BACK_CLASSES {
       @Override
       void score(Schedule schedule, ScoreAccumulator accum) {
-        Program program = schedule.getProgram();
-        Map<Teacher, NavigableMap<ClassPeriod, StartAssignment>> assignments = Maps.newHashMap();
-        for (Teacher teacher : program.getTeachers()) {
-          assignments.put(teacher, Maps.<ClassPeriod, StartAssignment> newTreeMap());
+        for (Teacher teacher : schedule.getProgram().getTeachers()) {
+          accum.subtract(transitions(schedule, teacher));
         }
-        for (StartAssignment assign : schedule.getStartAssignments()) {
-          for (Teacher teacher : program.teachersFor(assign.getCourse())) {
-            assignments.get(teacher).put(assign.getPeriod(), assign);
+      }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        for (Teacher teacher : affectedTeachers(delta)) {
+          accum.add(transitions(delta.getBefore(), teacher));
+          accum.subtract(transitions(delta.getAfter(), teacher));
+        }
+      }
+
+      /**
+       * Returns the number of times {@code teacher} has to change buildings between consecutive
+       * classes in {@code schedule}.
+       */
+      private int transitions(Schedule schedule, Teacher teacher) {
+        Map<Section, StartAssignment> assignments = schedule.getAssignmentsBySection();
+        NavigableMap<ClassPeriod, StartAssignment> teacherSchedule = Maps.newTreeMap();
+        for (Section s : schedule.getProgram().getSectionsForTeacher(teacher)) {
+          StartAssignment assign = assignments.get(s);
+          if (assign != null) {
+            teacherSchedule.put(assign.getPeriod(), assign);
           }
         }
-        for (NavigableMap<ClassPeriod, StartAssignment> teacherSchedule : assignments.values()) {
-          int transitions = 0;
-          PeekingIterator<StartAssignment> assignmentIterator =
-              Iterators.peekingIterator(teacherSchedule.values().iterator());
-          while (assignmentIterator.hasNext()) {
-            StartAssignment prev = assignmentIterator.next();
-            if (!assignmentIterator.hasNext()) {
-              break;
-            }
-            StartAssignment next = assignmentIterator.peek();
-            if (!prev.getBuilding().equals(next.getBuilding())) {
-              transitions++;
-            }
+        int transitions = 0;
+        PeekingIterator<StartAssignment> assignmentIterator =
+            Iterators.peekingIterator(teacherSchedule.values().iterator());
+        while (assignmentIterator.hasNext()) {
+          StartAssignment prev = assignmentIterator.next();
+          if (!assignmentIterator.hasNext()) {
+            break;
+          }
+          StartAssignment next = assignmentIterator.peek();
+          if (!prev.getBuilding().equals(next.getBuilding())) {
+            transitions++;
           }
-          accum.subtract(transitions);
         }
+        return transitions;
       }
 
       boolean backToBack(StartAssignment assign1, StartAssignment assign2) {
@@ -137,20 +222,23 @@ public final class ScorerModule extends AbstractModule {
     GLOBAL_ATTENDANCE_LEVELS {
       @Override
       void score(Schedule schedule, ScoreAccumulator accum) {
-        Program program = schedule.getProgram();
-        Multiset<ClassPeriod> attendanceLevels = HashMultiset.create(program.getPeriods().size());
-        for (PresentAssignment assign : schedule.getPresentAssignments()) {
-          attendanceLevels.add(assign.getPeriod(), assign.getSection().getMaxClassSize());
-        }
-        int totalAttendance = attendanceLevels.size();
-        for (ClassPeriod period : program.getPeriods()) {
-          int actualAttendance = attendanceLevels.count(period);
-          double expectedAttendance = program.getAttendanceRatio(period) * totalAttendance;
-          if (expectedAttendance != 0.0) {
-            double ratio = actualAttendance / expectedAttendance;
-            accum.subtract(Math.abs(ratio - 1.0));
-          }
+        AttendanceLevels levels = new AttendanceLevels(schedule.getProgram(), 0, 1);
+        for (StartAssignment assign : schedule.getStartAssignments()) {
+          levels.add(0, assign, 1);
         }
+        accum.setAttendanceLevels(levels);
+      }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        AttendanceLevels levels = accum.getAttendanceLevels();
+        for (StartAssignment assign : delta.getRemoved()) {
+          levels.add(0, assign, -1);
+        }
+        for (StartAssignment assign : delta.getAdded()) {
+          levels.add(0, assign, 1);
+        }
+        accum.setAttendanceLevels(levels);
       }
     },
     GRADE_ATTENDANCE_LEVELS {
@@ -158,8 +246,6 @@ public final class ScorerModule extends AbstractModule {
       void score(Schedule schedule, ScoreAccumulator accum) {
         Program program = schedule.getProgram();
 
-        Map<Integer, Multiset<ClassPeriod>> attendanceLevels = Maps.newHashMap();
-
         Iterator<Range<Integer>> gradeRanges =
             Iterables.transform(program.getCourses(), new Function<Course, Range<Integer>>() {
               @Override
@@ -172,25 +258,30 @@ public final class ScorerModule extends AbstractModule {
           gradeRange = gradeRange.span(gradeRanges.next());
         }
 
-        for (Integer grade : gradeRange.asSet(DiscreteDomains.integers())) {
-          attendanceLevels.put(grade, HashMultiset.<ClassPeriod> create());
+        int minGrade = gradeRange.lowerEndpoint();
+        AttendanceLevels levels =
+            new AttendanceLevels(program, minGrade, gradeRange.upperEndpoint() - minGrade + 1);
+        for (StartAssignment assign : schedule.getStartAssignments()) {
+          addToGrades(levels, assign, 1);
         }
-        for (PresentAssignment assign : schedule.getPresentAssignments()) {
-          for (Integer grade : assign.getCourse().getGradeRange().asSet(DiscreteDomains.integers())) {
-            attendanceLevels.get(grade).add(assign.getPeriod(), assign.getSection().getMaxClassSize());
-          }
+        accum.setAttendanceLevels(levels);
+      }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        AttendanceLevels levels = accum.getAttendanceLevels();
+        for (StartAssignment assign : delta.getRemoved()) {
+          addToGrades(levels, assign, -1);
         }
-        
-        for (Map.Entry<Integer, Multiset<ClassPeriod>> subjectEntry : attendanceLevels.entrySet()) {
-          int totalAttendance = subjectEntry.getValue().size();
-          for (ClassPeriod period : program.getPeriods()) {
-            int actualAttendance = subjectEntry.getValue().count(period);
-            double expectedAttendance = program.getAttendanceRatio(period) * totalAttendance;
-            if (expectedAttendance != 0.0) {
-              double ratio = actualAttendance / expectedAttendance;
-              accum.subtract(Math.abs(ratio - 1.0));
-            }
-          }
+        for (StartAssignment assign : delta.getAdded()) {
+          addToGrades(levels, assign, 1);
+        }
+        accum.setAttendanceLevels(levels);
+      }
+
+      private void addToGrades(AttendanceLevels levels, StartAssignment assign, int sign) {
+        for (Integer grade : assign.getCourse().getGradeRange().asSet(DiscreteDomains.integers())) {
+          levels.add(grade, assign, sign);
         }
       }
     },
@@ -198,27 +289,24 @@ public final class ScorerModule extends AbstractModule {
       @Override
       void score(Schedule schedule, ScoreAccumulator accum) {
         Program program = schedule.getProgram();
-        Map<Subject, Multiset<ClassPeriod>> attendanceLevels = Maps.newHashMap();
-        for (Subject subj : program.getSubjects()) {
-          attendanceLevels.put(subj, HashMultiset.<ClassPeriod> create());
-        }
-
-        for (PresentAssignment assign : schedule.getPresentAssignments()) {
-          attendanceLevels.get(assign.getSection().getSubject()).add(
-              assign.getPeriod(),
-              assign.getSection().getMaxClassSize());
-        }
-        for (Map.Entry<Subject, Multiset<ClassPeriod>> subjectEntry : attendanceLevels.entrySet()) {
-          int totalAttendance = subjectEntry.getValue().size();
-          for (ClassPeriod period : program.getPeriods()) {
-            int actualAttendance = subjectEntry.getValue().count(period);
-            double expectedAttendance = program.getAttendanceRatio(period) * totalAttendance;
-            if (expectedAttendance != 0.0) {
-              double ratio = actualAttendance / expectedAttendance;
-              accum.subtract(Math.abs(ratio - 1.0));
-            }
-          }
+        AttendanceLevels levels = new AttendanceLevels(program, 0, program.getSubjects().size());
+        for (StartAssignment assign : schedule.getStartAssignments()) {
+          levels.add(program.getOrdinal(assign.getSection().getSubject()), assign, 1);
+        }
+        accum.setAttendanceLevels(levels);
+      }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        Program program = delta.getAfter().getProgram();
+        AttendanceLevels levels = accum.getAttendanceLevels();
+        for (StartAssignment assign : delta.getRemoved()) {
+          levels.add(program.getOrdinal(assign.getSection().getSubject()), assign, -1);
+        }
+        for (StartAssignment assign : delta.getAdded()) {
+          levels.add(program.getOrdinal(assign.getSection().getSubject()), assign, 1);
         }
+        accum.setAttendanceLevels(levels);
       }
     },
     UNUSED_ROOMS {
@@ -231,6 +319,22 @@ public final class ScorerModule extends AbstractModule {
           }
         }
       }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        Set<Room> affected = Sets.newHashSet();
+        for (StartAssignment assign : changed(delta)) {
+          affected.add(assign.getRoom());
+        }
+        for (Room room : affected) {
+          if (delta.getBefore().startingIn(room).isEmpty()) {
+            accum.subtract(1);
+          }
+          if (delta.getAfter().startingIn(room).isEmpty()) {
+            accum.add(1);
+          }
+        }
+      }
     },
     /**
      * For every section, add bonus points for each section of each prerequisite of this course
@@ -239,20 +343,49 @@ public final class ScorerModule extends AbstractModule {
     PREREQUISITE_ORDERING {
       @Override
       void score(Schedule schedule, ScoreAccumulator accum) {
-        Program program = schedule.getProgram();
-        Map<Section, StartAssignment> assignmentsBySection = schedule.getAssignmentsBySection();
         for (StartAssignment assign : schedule.getStartAssignments()) {
-          List<Course> prerequisites = program.getPrerequisites(assign.getCourse());
-          for (Course prereq : prerequisites) {
-            int sectionsBefore = 0;
-            for (Section prereqSection : program.getSectionsOfCourse(prereq)) {
-              StartAssignment prereqAssign = assignmentsBySection.get(prereqSection);
-              if (prereqAssign != null
-                  && prereqAssign.getLastPeriod().compareTo(assign.getPeriod()) < 0) {
-                sectionsBefore++;
-              }
-            }
+          addTerms(schedule, assign, accum, 1);
+        }
+      }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        // A term depends on a section's assignment and those of its prerequisites' sections, so
+        // the changed terms are those of changed sections and of sections of dependent courses.
+        Program program = delta.getAfter().getProgram();
+        Set<Course> changedCourses = Sets.newHashSet();
+        Set<Section> affected = Sets.newHashSet();
+        for (StartAssignment assign : changed(delta)) {
+          changedCourses.add(assign.getCourse());
+          affected.add(assign.getSection());
+        }
+        for (Course course : changedCourses) {
+          for (Course dependent : program.getDependentCourses(course)) {
+            affected.addAll(program.getSectionsOfCourse(dependent));
+          }
+        }
+        for (Section section : affected) {
+          StartAssignment before = delta.getBefore().getAssignmentsBySection().get(section);
+          if (before != null) {
+            addTerms(delta.getBefore(), before, accum, -1);
+          }
+          StartAssignment after = delta.getAfter().getAssignmentsBySection().get(section);
+          if (after != null) {
+            addTerms(delta.getAfter(), after, accum, 1);
+          }
+        }
+      }
+
+      private void addTerms(Schedule schedule, StartAssignment assign, ScoreAccumulator accum,
+          int sign) {
+        Program program = schedule.getProgram();
+        List<Course> prerequisites = program.getPrerequisites(assign.getCourse());
+        for (Course prereq : prerequisites) {
+          int sectionsBefore = schedule.countEndingBefore(prereq, assign.getPeriod());
+          if (sign > 0) {
             accum.add(sectionsBefore);
+          } else {
+            accum.subtract(sectionsBefore);
           }
         }
       }
@@ -261,16 +394,116 @@ public final class ScorerModule extends AbstractModule {
       @Override
       void score(Schedule schedule, ScoreAccumulator accum) {
         for (StartAssignment assign : schedule.getStartAssignments()) {
-          Section sec = assign.getSection();
-          Optional<Room> preferred = sec.getPreferredRoom();
-          if (preferred.isPresent() && preferred.get().equals(assign.getRoom())) {
+          if (inPreferredRoom(assign)) {
             accum.add(1);
           }
         }
       }
+
+      @Override
+      void rescore(ScheduleDelta delta, ScoreAccumulator accum) {
+        for (StartAssignment assign : delta.getRemoved()) {
+          if (inPreferredRoom(assign)) {
+            accum.subtract(1);
+          }
+        }
+        for (StartAssignment assign : delta.getAdded()) {
+          if (inPreferredRoom(assign)) {
+            accum.add(1);
+          }
+        }
+      }
+
+      private boolean inPreferredRoom(StartAssignment assign) {
+        Optional<Room> preferred = assign.getSection().getPreferredRoom();
+        return preferred.isPresent() && preferred.get().equals(assign.getRoom());
+      }
     };
 
+    /**
+     * Scores {@code schedule} from scratch, adding to {@code accum}, which must be fresh.
+     */
     abstract void score(Schedule schedule, ScoreAccumulator accum);
+
+    /**
+     * Updates {@code accum}, which holds the result of scoring {@code delta.getBefore()}, so that
+     * it holds the score of {@code delta.getAfter()}. Implementations look only at the assignments
+     * in the delta and the schedule state around them, so that scoring a schedule derived from an
+     * already scored schedule by a few changes is cheap.
+     */
+    abstract void rescore(ScheduleDelta delta, ScoreAccumulator accum);
+
+    static Iterable<StartAssignment> changed(ScheduleDelta delta) {
+      return Iterables.concat(delta.getRemoved(), delta.getAdded());
+    }
+
+    static Set<Teacher> affectedTeachers(ScheduleDelta delta) {
+      Program program = delta.getAfter().getProgram();
+      Set<Teacher> teachers = Sets.newHashSet();
+      for (StartAssignment assign : changed(delta)) {
+        teachers.addAll(program.teachersFor(assign.getSection()));
+      }
+      return teachers;
+    }
+  }
+
+  /**
+   * The number of students attending classes in each period, broken down into groups (grades,
+   * subjects), kept so attendance-based scores can be updated as assignments come and go.
+   */
+  static final class AttendanceLevels {
+    private final Program program;
+    private final int firstGroup;
+    private final int nGroups;
+    private final int nPeriods;
+    private final int[] levels;
+
+    AttendanceLevels(Program program, int firstGroup, int nGroups) {
+      this.program = program;
+      this.firstGroup = firstGroup;
+      this.nGroups = nGroups;
+      this.nPeriods = program.getPeriods().size();
+      this.levels = new int[nGroups * nPeriods];
+    }
+
+    private AttendanceLevels(AttendanceLevels toCopy) {
+      this.program = toCopy.program;
+      this.firstGroup = toCopy.firstGroup;
+      this.nGroups = toCopy.nGroups;
+      this.nPeriods = toCopy.nPeriods;
+      this.levels = toCopy.levels.clone();
+    }
+
+    AttendanceLevels copy() {
+      return new AttendanceLevels(this);
+    }
+
+    void add(int group, StartAssignment assign, int sign) {
+      int row = (group - firstGroup) * nPeriods;
+      int size = sign * assign.getSection().getMaxClassSize();
+      for (ClassPeriod period : assign.getPresentPeriods()) {
+        levels[row + program.getOrdinal(period)] += size;
+      }
+    }
+
+    void score(ScoreAccumulator accum) {
+      for (int group = 0; group < nGroups; group++) {
+        int row = group * nPeriods;
+        int totalAttendance = 0;
+        for (int i = 0; i < nPeriods; i++) {
+          totalAttendance += levels[row + i];
+        }
+        for (int i = 0; i < nPeriods; i++) {
+          int actualAttendance = levels[row + i];
+          double expectedAttendance =
+              program.getAttendanceRatio(program.getPeriodByOrdinal(i)) * totalAttendance;
+          if (expectedAttendance != 0.0) {
+            double ratio = actualAttendance / expectedAttendance;
+            accum.subtract(Math.abs(ratio - 1.0));
+          }
+        }
+      }
+    }
   }
 
   static final class ScoreAccumulator {
@@ -278,12 +511,29 @@ public final class ScorerModule extends AbstractModule {
     private final double scale;
     private double accum;
 
+    /*
+     * Sufficient statistics kept by the impls whose scores are not simple sums over assignments,
+     * so that their scores can be updated from a delta.
+     */
+    private int count;
+    private AttendanceLevels attendanceLevels;
+
     ScoreAccumulator(double exponent, double scale) {
       this.exponent = exponent;
       this.scale = scale;
       this.accum = 0.0;
     }
 
+    ScoreAccumulator copy() {
+      ScoreAccumulator copy = new ScoreAccumulator(exponent, scale);
+      copy.accum = accum;
+      copy.count = count;
+      if (attendanceLevels != null) {
+        copy.attendanceLevels = attendanceLevels.copy();
+      }
+      return copy;
+    }
+
     public double getTotal() {
       return scale * accum;
     }
@@ -295,80 +545,163 @@ public final class ScorerModule extends AbstractModule {
     public void subtract(double score) {
       accum -= Math.pow(score, exponent);
     }
+
+    int getCount() {
+      return count;
+    }
+
+    /**
+     * Sets the score to that of the single value {@code count}, and remembers it.
+     */
+    void setCount(int count) {
+      this.count = count;
+      this.accum = 0.0;
+      add(count);
+    }
+
+    AttendanceLevels getAttendanceLevels() {
+      return attendanceLevels;
+    }
+
+    /**
+     * Sets the score to the attendance score of {@code levels}, and remembers them.
+     */
+    void setAttendanceLevels(AttendanceLevels levels) {
+      this.attendanceLevels = levels;
+      this.accum = 0.0;
+      levels.score(this);
+    }
+  }
+
+  /**
+   * A single weighted component of the composite score. Along with each score, this caches the
+   * statistics needed to rescore a schedule derived from the scored one, so a schedule that is a
+   * few changes away from one that has already been scored is scored from just those changes.
+   */
+  static final class ComponentScorer implements Scorer<Schedule> {
+    /**
+     * The farthest back we look for an already scored schedule before scoring from scratch.
+     */
+    private static final int MAX_RESCORE_STEPS = 1024;
+
+    private final ScorerImpl impl;
+    private final double exponent;
+    private final double multiplier;
+    private final LoadingCache<Schedule, ScoreAccumulator> cache;
+    private final Predicate<Schedule> isScored = new Predicate<Schedule>() {
+      @Override
+      public boolean apply(Schedule input) {
+        return cache.asMap().containsKey(input);
+      }
+    };
+
+    ComponentScorer(ScaledScorer scorer) {
+      this.impl = deserialize(scorer.getImpl());
+      this.exponent = scorer.getExponent();
+      this.multiplier = scorer.getMultiplier();
+      this.cache = CacheBuilder
+          .newBuilder()
+          .weakKeys()
+          .concurrencyLevel(4)
+          .build(new CacheLoader<Schedule, ScoreAccumulator>() {
+            @Override
+            public ScoreAccumulator load(Schedule key) {
+              return scoreFromScratchOrAncestor(key);
+            }
+          });
+    }
+
+    private ScoreAccumulator scoreFromScratchOrAncestor(Schedule schedule) {
+      Optional<ScheduleDelta> delta = schedule.deltaFromAncestor(isScored, MAX_RESCORE_STEPS);
+      if (delta.isPresent()) {
+        ScoreAccumulator base = cache.getIfPresent(delta.get().getBefore());
+        if (base != null) {
+          ScoreAccumulator accum = base.copy();
+          impl.rescore(delta.get(), accum);
+          return accum;
+        }
+      }
+      ScoreAccumulator accum = new ScoreAccumulator(exponent, multiplier);
+      impl.score(schedule, accum);
+      return accum;
+    }
+
+    @Override
+    public double score(Schedule input) {
+      return cache.getUnchecked(input).getTotal();
+    }
+
+    CacheStats stats() {
+      return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+      return impl.toString();
+    }
   }
 
   @Singleton
   public static final class CompositeScorer implements Scorer<Schedule> {
+    /**
+     * The number of recently scored schedules to remember. Each one keeps its own index reachable,
+     * so this is much smaller than the component caches.
+     */
+    private static final int TRANSPOSITION_CACHE_SIZE = 1 << 12;
+
     private final Logger logger;
-    private final List<LoadingCache<Schedule, Double>> scoreCaches;
-    private final List<Scorer<Schedule>> components;
+    private final List<ComponentScorer> components;
+
+    /*
+     * Scores of recently scored schedules, so that a schedule equal to one already scored -- for
+     * example, one that another sub-optimizer reached by a different path -- is not scored again.
+     * Schedules hash by fingerprint, but equals still compares their assignments, so a fingerprint
+     * collision cannot return the wrong score.
+     */
+    private final Cache<Schedule, Double> transpositions =
+        CacheBuilder.newBuilder().maximumSize(TRANSPOSITION_CACHE_SIZE).recordStats().build();
 
     @Inject
     CompositeScorer(Logger logger, CompleteScorer serial) {
       this.logger = logger;
-      ImmutableList.Builder<Scorer<Schedule>> componentsBuilder = ImmutableList.builder();
-      ImmutableList.Builder<LoadingCache<Schedule, Double>> scoreCachesBuilder =
-          ImmutableList.builder();
+      ImmutableList.Builder<ComponentScorer> componentsBuilder = ImmutableList.builder();
       for (ScaledScorer scaled : serial.getComponentList()) {
-        final Scorer<Schedule> scorer = deserialize(scaled);
-        componentsBuilder.add(scorer);
-        scoreCachesBuilder.add(CacheBuilder
-            .newBuilder()
-            .weakKeys()
-            .concurrencyLevel(4)
-            .build(new CacheLoader<Schedule, Double>() {
-
-              @Override
-              public Double load(Schedule key) {
-                return scorer.score(key);
-              }
-            }));
+        componentsBuilder.add(new ComponentScorer(scaled));
       }
       components = componentsBuilder.build();
-      this.scoreCaches = scoreCachesBuilder.build();
     }
 
     @Override
     public double score(Schedule input) {
+      Double known = transpositions.getIfPresent(input);
+      if (known != null) {
+        // the components may never see input, so it must not keep its ancestors alive either
+        input.forgetAncestors();
+        return known;
+      }
       double total = 0;
-      for (LoadingCache<Schedule, Double> scorer : scoreCaches) {
-        total += scorer.getUnchecked(input);
+      for (ComponentScorer component : components) {
+        total += component.score(input);
       }
+      // every component now has the score of input cached, so its ancestors are no longer needed
+      input.forgetAncestors();
+      transpositions.put(input, total);
       return total;
     }
 
     public void logCacheStats() {
-      for (int i = 0; i < components.size(); i++) {
-        logger.log(Level.INFO, "Stats for {0}: {1}", new Object[] { components.get(i),
-            scoreCaches.get(i).stats() });
+      for (ComponentScorer component : components) {
+        logger.log(Level.INFO, "Stats for {0}: {1}", new Object[] { component,
+            component.stats() });
         logger.log(
             Level.INFO,
             "Average time spent on {0}: {1}us",
-            new Object[] { components.get(i),
-                (long) (scoreCaches.get(i).stats().averageLoadPenalty() / 1000) });
+            new Object[] { component, (long) (component.stats().averageLoadPenalty() / 1000) });
       }
+      logger.log(Level.INFO, "Stats for repeated schedules: {0}", transpositions.stats());
     }
   }
 
-  private static Scorer<Schedule> deserialize(ScaledScorer scorer) {
-    final double multiplier = scorer.getMultiplier();
-    final double exponent = scorer.getExponent();
-    final ScorerImpl impl = deserialize(scorer.getImpl());
-    return new Scorer<Schedule>() {
-      @Override
-      public double score(Schedule input) {
-        ScoreAccumulator accum = new ScoreAccumulator(exponent, multiplier);
-        impl.score(input, accum);
-        return accum.getTotal();
-      }
-
-      @Override
-      public String toString() {
-        return impl.toString();
-      }
-    };
-  }
-
   private static ScorerImpl deserialize(SerialScorerImpl impl) {
     switch (impl) {
       case CLASS_HOURS_SCHEDULED:
@@ -15,6 +15,7 @@ import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.optimization.Perturber;
+import org.learningu.scheduling.schedule.MutableSchedule;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
 
@@ -30,10 +31,10 @@ public class DestructiveByRoomPerturber implements Perturber<Schedule> {
   public Schedule perturb(Schedule initial, double temperature) {
     List<Map.Entry<ClassPeriod, Room>> free = Lists.newArrayList();
     Program program = initial.getProgram();
-    Schedule current = initial;
+    MutableSchedule current = initial.mutableCopy();
     for (Room room : program.getRooms()) {
       for (ClassPeriod period : program.compatiblePeriods(room)) {
-        if (!current.occurringAt(period, room).isPresent()) {
+        if (!initial.occurringAt(period, room).isPresent()) {
           free.add(Maps.immutableEntry(period, room));
         }
       }
@@ -41,22 +42,21 @@ public class DestructiveByRoomPerturber implements Perturber<Schedule> {
     Collections.shuffle(free, rand);
     List<Section> unscheduledSections = Lists.newArrayList(Sets.difference(
         program.getSections(),
-        current.getScheduledSections()));
+        initial.getScheduledSections()));
     Collections.shuffle(unscheduledSections, rand);
     int n = Math.min(
         unscheduledSections.size(),
         (int) (Math.min(unscheduledSections.size(), free.size()) * temperature));
     for (int i = 0; i < n; i++) {
       try {
-        current = current.forceAssignStart(
-            StartAssignment.create(
-                free.get(i).getKey(),
-                free.get(i).getValue(),
-                unscheduledSections.get(i))).getNewState();
+        current.forceAssignStart(StartAssignment.create(
+            free.get(i).getKey(),
+            free.get(i).getValue(),
+            unscheduledSections.get(i)));
       } catch (IllegalArgumentException e) {
         continue;
       }
     }
-    return current;
+    return current.snapshot();
   }
 }
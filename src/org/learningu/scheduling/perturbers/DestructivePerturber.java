@@ -11,6 +11,7 @@ import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.optimization.Perturber;
+import org.learningu.scheduling.schedule.MutableSchedule;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
 
@@ -36,7 +37,7 @@ final class DestructivePerturber implements Perturber<Schedule> {
 
     int nAttempts = Math.max(1, (int) (sections.size() * temperature));
 
-    Schedule current = initial;
+    MutableSchedule current = initial.mutableCopy();
     for (int i = 0; i < nAttempts; i++) {
       Section section = getRandom(sections);
       Room room = getRandom(rooms);
@@ -53,10 +54,10 @@ final class DestructivePerturber implements Perturber<Schedule> {
       } catch (IllegalArgumentException e) {
         continue;
       }
-      current = current.forceAssignStart(assign).getNewState();
+      current.forceAssignStart(assign);
     }
 
-    return current;
+    return current.snapshot();
   }
 
 }
@@ -1,6 +1,6 @@
 package org.learningu.scheduling.perturbers;
 
-import com.google.common.collect.ImmutableList;
+import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
@@ -9,11 +9,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
-import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Program;
-import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.optimization.Perturber;
+import org.learningu.scheduling.schedule.MutableSchedule;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
 
@@ -30,11 +29,6 @@ final class GreedyPerturber implements Perturber<Schedule> {
     this.rand = rand;
   }
 
-  private <E> E getRandom(List<E> list) {
-    assert !list.isEmpty();
-    return list.get(rand.nextInt(list.size()));
-  }
-
   @Override
   public Schedule perturb(Schedule initial, double temperature) {
     Program program = initial.getProgram();
@@ -48,21 +42,15 @@ final class GreedyPerturber implements Perturber<Schedule> {
         Math.max(1, (int) (unscheduled.size() * temperature)));
     unscheduled = unscheduled.subList(0, nAttempts);
 
-    ImmutableList<Room> rooms = ImmutableList.copyOf(program.getRooms());
-    ImmutableList<ClassPeriod> periods = ImmutableList.copyOf(program.getPeriods());
-    Schedule current = initial;
+    MutableSchedule current = initial.mutableCopy();
     for (Section section : unscheduled) {
-      Room room = getRandom(rooms);
-      ClassPeriod pd = getRandom(periods);
-      try {
-        StartAssignment assign = StartAssignment.create(pd, room, section);
-        current = current.assignStart(assign).getNewState();
-      } catch (IllegalArgumentException e) {
-        // not enough periods left in the block
-        continue;
+      // only try assignments that could possibly be valid
+      Optional<StartAssignment> assign = initial.randomFeasibleStart(section, rand);
+      if (assign.isPresent()) {
+        current.tryAssignStart(assign.get());
       }
     }
 
-    return current;
+    return current.snapshot();
   }
 }
@@ -1,12 +1,12 @@
 package org.learningu.scheduling.perturbers;
 
-import com.google.common.collect.Lists;
+import com.google.common.base.Optional;
 import com.google.inject.Inject;
 
-import java.util.List;
 import java.util.Random;
 
 import org.learningu.scheduling.optimization.Perturber;
+import org.learningu.scheduling.schedule.MutableSchedule;
 import org.learningu.scheduling.schedule.Schedule;
 import org.learningu.scheduling.schedule.StartAssignment;
 
@@ -20,39 +20,35 @@ final class SwappingPerturber implements Perturber<Schedule> {
 
   @Override
   public Schedule perturb(Schedule initial, double temperature) {
-    List<StartAssignment> assigns = Lists.newArrayList(initial.getStartAssignments());
-    if (assigns.isEmpty()) {
+    if (initial.getStartAssignments().size() < 2) {
       return initial;
     }
     int stop = (int) (50 * temperature);
-    Schedule current = initial;
-    for (int k = 0; k <= stop && !assigns.isEmpty(); k++) {
-      int i = rand.nextInt(assigns.size());
-      StartAssignment a = assigns.remove(i);
-      if (assigns.isEmpty()) {
+    MutableSchedule current = initial.mutableCopy();
+    for (int k = 0; k <= stop; k++) {
+      Optional<StartAssignment> first = current.randomAssignment(rand);
+      Optional<StartAssignment> second = current.randomAssignment(rand);
+      if (!first.isPresent()) {
         break;
       }
-      int j = rand.nextInt(assigns.size());
-      StartAssignment b = assigns.remove(j);
-      Schedule removed = current
-          .removeStartingAt(a.getPeriod(), a.getRoom())
-          .getNewState()
-          .removeStartingAt(b.getPeriod(), b.getRoom())
-          .getNewState();
-      current = removed;
+      StartAssignment a = first.get();
+      StartAssignment b = second.get();
+      if (a.getSection().equals(b.getSection())) {
+        continue;
+      }
+      current.removeStartingAt(a.getPeriod(), a.getRoom());
+      current.removeStartingAt(b.getPeriod(), b.getRoom());
       try {
-        current = current.assignStart(
-            StartAssignment.create(a.getPeriod(), a.getRoom(), b.getSection())).getNewState();
+        current.tryAssignStart(StartAssignment.create(a.getPeriod(), a.getRoom(), b.getSection()));
       } catch (IllegalArgumentException e) {
         // continue
       }
       try {
-        current = current.assignStart(
-            StartAssignment.create(b.getPeriod(), b.getRoom(), a.getSection())).getNewState();
+        current.tryAssignStart(StartAssignment.create(b.getPeriod(), b.getRoom(), a.getSection()));
       } catch (IllegalArgumentException e) {
         // continue
       }
     }
-    return current;
+    return current.snapshot();
   }
 }
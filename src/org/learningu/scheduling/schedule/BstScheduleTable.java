@@ -0,0 +1,112 @@
+package org.learningu.scheduling.schedule;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.util.PersistentArray;
+import org.learningu.scheduling.util.bst.EditToken;
+import org.learningu.scheduling.util.bst.IntBstMap;
+import org.learningu.scheduling.util.bst.IntTreapNode;
+
+/**
+ * A {@link ScheduleTable} that keeps, for each room, a sorted map from period ordinals to the
+ * sections starting then. Finding the section in a room at a given period is a floor lookup in that
+ * room's map.
+ *
+ * @author lowasser
+ */
+final class BstScheduleTable implements ScheduleTable {
+  static BstScheduleTable create(Program program) {
+    return new BstScheduleTable(
+        program,
+        PersistentArray.create(program.getRooms().size(), IntBstMap.<Section> create()));
+  }
+
+  private final Program program;
+
+  /**
+   * For each room, by ordinal, the sections starting in that room, keyed by period ordinal.
+   */
+  private final PersistentArray<IntBstMap<Section>> startingTimeTable;
+
+  private BstScheduleTable(Program program, PersistentArray<IntBstMap<Section>> startingTimeTable) {
+    this.program = checkNotNull(program);
+    this.startingTimeTable = checkNotNull(startingTimeTable);
+  }
+
+  private IntBstMap<Section> scheduleForRoom(Room room) {
+    return startingTimeTable.get(program.getOrdinal(room));
+  }
+
+  /**
+   * Returns the entry for the last section starting in {@code room} at or before {@code period} in
+   * the same time block, or {@code null} if there is none.
+   */
+  @Nullable
+  private IntTreapNode<Section> floorInBlock(Room room, ClassPeriod period) {
+    IntTreapNode<Section> floorEntry =
+        scheduleForRoom(room).floorEntry(program.getOrdinal(period));
+    if (floorEntry != null && program.getPeriodByOrdinal(floorEntry.getKey()).getTimeBlock()
+        .equals(period.getTimeBlock())) {
+      return floorEntry;
+    }
+    return null;
+  }
+
+  @Override
+  public Section startingAt(Room room, ClassPeriod period) {
+    return scheduleForRoom(room).get(program.getOrdinal(period));
+  }
+
+  @Override
+  public Section startingBefore(Room room, ClassPeriod period) {
+    IntTreapNode<Section> floorEntry = floorInBlock(room, period);
+    return (floorEntry == null) ? null : floorEntry.getValue();
+  }
+
+  @Override
+  public Section occupying(Room room, ClassPeriod period) {
+    IntTreapNode<Section> floorEntry = floorInBlock(room, period);
+    if (floorEntry != null) {
+      Section section = floorEntry.getValue();
+      ClassPeriod start = program.getPeriodByOrdinal(floorEntry.getKey());
+      if (period.getIndex() - start.getIndex() < section.getPeriodLength()) {
+        return section;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Map<ClassPeriod, Section> startingIn(Room room) {
+    return OrdinalMap.byPeriod(program, scheduleForRoom(room));
+  }
+
+  @Override
+  public BstScheduleTable with(StartAssignment assign, @Nullable EditToken owner) {
+    int r = program.getOrdinal(assign.getRoom());
+    int p = program.getOrdinal(assign.getPeriod());
+    return new BstScheduleTable(
+        program,
+        startingTimeTable.with(
+            r,
+            startingTimeTable.get(r).insert(p, assign.getSection(), owner),
+            owner));
+  }
+
+  @Override
+  public BstScheduleTable without(StartAssignment assign, @Nullable EditToken owner) {
+    int r = program.getOrdinal(assign.getRoom());
+    int p = program.getOrdinal(assign.getPeriod());
+    return new BstScheduleTable(
+        program,
+        startingTimeTable.with(r, startingTimeTable.get(r).delete(p, owner), owner));
+  }
+}
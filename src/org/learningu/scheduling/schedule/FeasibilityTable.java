@@ -0,0 +1,160 @@
+package org.learningu.scheduling.schedule;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.logic.ScheduleLogic;
+
+/**
+ * A table of which start assignments in a program pass every check of a {@link ScheduleLogic} that
+ * depends only on the program, as reported by its {@code isStaticallyFeasible} methods.
+ *
+ * <p>The table has one bit for each section, room and starting period. The bits for each section
+ * start on a fresh word, so that the table can be filled in parallel, a few sections at a time.
+ *
+ * @author lowasser
+ */
+final class FeasibilityTable {
+  /**
+   * The number of sections each task fills in without splitting further.
+   */
+  private static final int SECTIONS_PER_TASK = 8;
+
+  static FeasibilityTable create(Program program, ScheduleLogic logic, ForkJoinPool pool) {
+    FeasibilityTable table = new FeasibilityTable(program, logic);
+    pool.invoke(table.new Fill(0, program.getSections().size()));
+    return table;
+  }
+
+  private final Program program;
+
+  private final ScheduleLogic logic;
+
+  private final int nPeriods;
+
+  private final int wordsPerSection;
+
+  private final long[] words;
+
+  /**
+   * The number of feasible start assignments of each section, by ordinal.
+   */
+  private final int[] feasibleCounts;
+
+  private FeasibilityTable(Program program, ScheduleLogic logic) {
+    this.program = checkNotNull(program);
+    this.logic = checkNotNull(logic);
+    this.nPeriods = program.getPeriods().size();
+    int nSections = program.getSections().size();
+    this.wordsPerSection = (program.getRooms().size() * nPeriods + 63) >>> 6;
+    this.words = new long[nSections * wordsPerSection];
+    this.feasibleCounts = new int[nSections];
+  }
+
+  boolean isFeasible(StartAssignment assign) {
+    int bit = program.getOrdinal(assign.getRoom()) * nPeriods
+        + program.getOrdinal(assign.getPeriod());
+    long word = words[program.getOrdinal(assign.getSection()) * wordsPerSection + (bit >>> 6)];
+    return (word & (1L << bit)) != 0;
+  }
+
+  /**
+   * Returns a start assignment of {@code section} chosen uniformly at random from those that are
+   * feasible, or {@code null} if there are none.
+   */
+  @Nullable
+  StartAssignment randomFeasible(Section section, Random random) {
+    int s = program.getOrdinal(section);
+    int count = feasibleCounts[s];
+    if (count == 0) {
+      return null;
+    }
+    int k = random.nextInt(count);
+    int base = s * wordsPerSection;
+    for (int w = 0;; w++) {
+      long word = words[base + w];
+      int wordCount = Long.bitCount(word);
+      if (k < wordCount) {
+        for (int i = 0; i < k; i++) {
+          word &= word - 1;
+        }
+        int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+        return StartAssignment.create(
+            program.getPeriodByOrdinal(bit % nPeriods),
+            program.getRoomByOrdinal(bit / nPeriods),
+            section);
+      }
+      k -= wordCount;
+    }
+  }
+
+  private void fill(int s) {
+    Section section = program.getSectionByOrdinal(s);
+    int base = s * wordsPerSection;
+    int count = 0;
+    for (Room room : program.getRooms()) {
+      int roomBits = program.getOrdinal(room) * nPeriods;
+      for (ClassPeriod period : program.getPeriods()) {
+        if (period.getIndex() + section.getPeriodLength() > period
+            .getTimeBlock()
+            .getPeriods()
+            .size()) {
+          continue;
+        }
+        StartAssignment assign = StartAssignment.create(period, room, section);
+        if (isStaticallyFeasible(assign)) {
+          int bit = roomBits + program.getOrdinal(period);
+          words[base + (bit >>> 6)] |= 1L << bit;
+          count++;
+        }
+      }
+    }
+    feasibleCounts[s] = count;
+  }
+
+  private boolean isStaticallyFeasible(StartAssignment assign) {
+    if (!logic.isStaticallyFeasible(program, assign)) {
+      return false;
+    }
+    for (PresentAssignment present : assign.getPresentAssignments()) {
+      if (!logic.isStaticallyFeasible(program, present)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Fills in the rows of the sections with ordinals in {@code [from, to)}.
+   */
+  private final class Fill extends RecursiveAction {
+    private final int from;
+    private final int to;
+
+    Fill(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= SECTIONS_PER_TASK) {
+        for (int s = from; s < to; s++) {
+          fill(s);
+        }
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Fill(from, mid), new Fill(mid, to));
+      }
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package org.learningu.scheduling.schedule;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.TimeBlock;
+import org.learningu.scheduling.util.PersistentIntArray;
+import org.learningu.scheduling.util.bst.EditToken;
+
+/**
+ * A {@link ScheduleTable} that keeps a dense grid with a cell for every room and period, so that
+ * finding what is going on in a room at a given time is a single array read.
+ *
+ * <p>Cells are indexed by {@code roomOrdinal * nPeriods + periodOrdinal}. A cell holds zero if the
+ * room is empty in that period, {@code -(sectionOrdinal + 1)} if a section starts there, and
+ * {@code sectionOrdinal + 1} if a section that started earlier is still going on.
+ *
+ * @author lowasser
+ */
+final class GridScheduleTable implements ScheduleTable {
+  static GridScheduleTable create(Program program) {
+    int nPeriods = program.getPeriods().size();
+    return new GridScheduleTable(
+        program,
+        nPeriods,
+        PersistentIntArray.create(program.getRooms().size() * nPeriods));
+  }
+
+  private final Program program;
+  private final int nPeriods;
+  private final PersistentIntArray grid;
+
+  private GridScheduleTable(Program program, int nPeriods, PersistentIntArray grid) {
+    this.program = checkNotNull(program);
+    this.nPeriods = nPeriods;
+    this.grid = checkNotNull(grid);
+  }
+
+  private int cellIndex(Room room, ClassPeriod period) {
+    return program.getOrdinal(room) * nPeriods + program.getOrdinal(period);
+  }
+
+  private Section section(int cell) {
+    return program.getSectionByOrdinal(Math.abs(cell) - 1);
+  }
+
+  @Override
+  public Section startingAt(Room room, ClassPeriod period) {
+    int cell = grid.get(cellIndex(room, period));
+    return (cell < 0) ? section(cell) : null;
+  }
+
+  @Override
+  public Section startingBefore(Room room, ClassPeriod period) {
+    int periodOrdinal = program.getOrdinal(period);
+    int rowStart = program.getOrdinal(room) * nPeriods;
+    TimeBlock block = period.getTimeBlock();
+    // periods are numbered chronologically, so walk back until we leave the time block
+    for (int p = periodOrdinal;
+        p >= 0 && program.getPeriodByOrdinal(p).getTimeBlock().equals(block); p--) {
+      int cell = grid.get(rowStart + p);
+      if (cell != 0) {
+        return section(cell);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Section occupying(Room room, ClassPeriod period) {
+    int cell = grid.get(cellIndex(room, period));
+    return (cell == 0) ? null : section(cell);
+  }
+
+  @Override
+  public Map<ClassPeriod, Section> startingIn(Room room) {
+    ImmutableMap.Builder<ClassPeriod, Section> builder = ImmutableMap.builder();
+    int rowStart = program.getOrdinal(room) * nPeriods;
+    for (int p = 0; p < nPeriods; p++) {
+      int cell = grid.get(rowStart + p);
+      if (cell < 0) {
+        builder.put(program.getPeriodByOrdinal(p), section(cell));
+      }
+    }
+    return builder.build();
+  }
+
+  @Override
+  public GridScheduleTable with(StartAssignment assign, @Nullable EditToken owner) {
+    int code = program.getOrdinal(assign.getSection()) + 1;
+    PersistentIntArray revised = grid;
+    for (ClassPeriod period : assign.getPresentPeriods()) {
+      int index = cellIndex(assign.getRoom(), period);
+      revised = revised.with(index, period.equals(assign.getPeriod()) ? -code : code, owner);
+    }
+    return new GridScheduleTable(program, nPeriods, revised);
+  }
+
+  @Override
+  public GridScheduleTable without(StartAssignment assign, @Nullable EditToken owner) {
+    int code = program.getOrdinal(assign.getSection()) + 1;
+    PersistentIntArray revised = grid;
+    for (ClassPeriod period : assign.getPresentPeriods()) {
+      int index = cellIndex(assign.getRoom(), period);
+      if (Math.abs(revised.get(index)) == code) {
+        revised = revised.with(index, 0, owner);
+      }
+    }
+    return new GridScheduleTable(program, nPeriods, revised);
+  }
+}
@@ -0,0 +1,338 @@
+package org.learningu.scheduling.schedule;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.logic.GlobalConflict;
+import org.learningu.scheduling.logic.ScheduleValidator;
+import org.learningu.scheduling.util.bst.EditToken;
+
+/**
+ * A mutable working copy of a {@link Schedule}, for code that tries out a series of changes and
+ * only wants an immutable {@code Schedule} for the end result. Every change is recorded in an undo
+ * log, so callers can {@link #mark()} a state and {@link #rollback(int)} to it later.
+ *
+ * <p>The working state shares its persistent indices with the schedule it was copied from, so
+ * taking a {@link #snapshot()} and rolling back are constant-time. Between calls to
+ * {@link #mark()} and {@link #snapshot()}, the nodes a series of changes creates in those indices
+ * are modified in place by later changes instead of being copied again. A snapshot records the
+ * schedule this was copied from as its parent, so state such as scores can be carried over
+ * incrementally.
+ *
+ * <p>Instances are not thread-safe, and should be confined to a single thread.
+ *
+ * @author lowasser
+ */
+public final class MutableSchedule {
+  /**
+   * A single change, with the indices from before it was made.
+   */
+  private static final class Edit {
+    final ScheduleIndex oldIndex;
+    final StartAssignment assign;
+    final boolean added;
+
+    Edit(ScheduleIndex oldIndex, StartAssignment assign, boolean added) {
+      this.oldIndex = oldIndex;
+      this.assign = assign;
+      this.added = added;
+    }
+  }
+
+  private final Schedule base;
+
+  private final Schedule.Factory factory;
+
+  private ScheduleIndex index;
+
+  private final List<Edit> log;
+
+  /*
+   * The owner of index nodes that may still be modified in place. This is replaced whenever the
+   * current state must be preserved, so that later changes copy its nodes instead.
+   */
+  private EditToken owner;
+
+  /*
+   * The snapshot of the current state, if one has been taken since the last change.
+   */
+  @Nullable
+  private Schedule snapshot;
+
+  /*
+   * A schedule with the current state but no record of where it came from, for validating changes
+   * against, if one has been made since the last change. This is cheaper than a snapshot, whose
+   * net changes take time proportional to the length of the log.
+   */
+  @Nullable
+  private Schedule view;
+
+  MutableSchedule(Schedule base) {
+    this.base = checkNotNull(base);
+    this.factory = base.factory;
+    this.index = base.index;
+    this.log = Lists.newArrayList();
+    this.owner = new EditToken();
+    this.snapshot = base;
+    this.view = base;
+  }
+
+  public Program getProgram() {
+    return base.getProgram();
+  }
+
+  /**
+   * Returns a view of the current assignments by section, which should not be used after further
+   * changes are made.
+   */
+  public Map<Section, StartAssignment> getAssignmentsBySection() {
+    return index.assignmentsBySection();
+  }
+
+  /**
+   * Returns an assignment chosen uniformly at random, or absent if there are none. This takes time
+   * logarithmic in the number of assignments.
+   */
+  public Optional<StartAssignment> randomAssignment(Random random) {
+    return Optional.fromNullable(index.randomAssignment(random));
+  }
+
+  public Optional<StartAssignment> startingAt(ClassPeriod period, Room room) {
+    Section section = index.table.startingAt(room, period);
+    if (section != null) {
+      return Optional.of(StartAssignment.create(period, room, section));
+    } else {
+      return Optional.absent();
+    }
+  }
+
+  public Optional<PresentAssignment> occurringAt(ClassPeriod period, Room room) {
+    Section section = index.table.occupying(room, period);
+    if (section != null) {
+      StartAssignment start = index.assignment(section);
+      return Optional.of(start.getPresentAssignment(
+          period.getIndex() - start.getPeriod().getIndex()));
+    }
+    return Optional.absent();
+  }
+
+  /**
+   * Returns the current state as an immutable schedule.
+   */
+  public Schedule snapshot() {
+    Schedule result = snapshot;
+    if (result == null) {
+      Set<StartAssignment> netAdded = Sets.newLinkedHashSet();
+      Set<StartAssignment> netRemoved = Sets.newLinkedHashSet();
+      for (Edit edit : log) {
+        if (edit.added) {
+          Schedule.accumulate(netAdded, netRemoved, ImmutableSet.of(edit.assign),
+              ImmutableSet.<StartAssignment> of());
+        } else {
+          Schedule.accumulate(netAdded, netRemoved, ImmutableSet.<StartAssignment> of(),
+              ImmutableSet.of(edit.assign));
+        }
+      }
+      result = snapshot = new Schedule(
+          factory,
+          index,
+          base,
+          ImmutableSet.copyOf(netAdded),
+          ImmutableSet.copyOf(netRemoved));
+      owner = new EditToken();
+    }
+    return result;
+  }
+
+  private Schedule view() {
+    Schedule result = view;
+    if (result == null) {
+      result = view = new Schedule(
+          factory,
+          index,
+          null,
+          ImmutableSet.<StartAssignment> of(),
+          ImmutableSet.<StartAssignment> of());
+    }
+    return result;
+  }
+
+  /**
+   * Returns a token for the current state, which can be passed to {@link #rollback(int)} to undo
+   * all changes made after this call.
+   */
+  public int mark() {
+    owner = new EditToken();
+    return log.size();
+  }
+
+  /**
+   * Undoes all changes made since {@code mark} was returned by {@link #mark()}. Only values
+   * returned by {@code mark()} may be passed here, since the states in between may have been
+   * modified in place.
+   */
+  public void rollback(int mark) {
+    checkPositionIndex(mark, log.size());
+    if (mark == log.size()) {
+      return;
+    }
+    Edit oldest = log.get(mark);
+    index = oldest.oldIndex;
+    log.subList(mark, log.size()).clear();
+    owner = new EditToken();
+    snapshot = view = log.isEmpty() ? base : null;
+  }
+
+  private void add(StartAssignment assign) {
+    log.add(new Edit(index, assign, true));
+    index = index.with(assign, owner);
+    snapshot = view = null;
+  }
+
+  private void remove(StartAssignment assign) {
+    log.add(new Edit(index, assign, false));
+    index = index.without(assign, owner);
+    snapshot = view = null;
+  }
+
+  /**
+   * Assigns {@code assign} if that does not cause any conflicts. Returns the validator describing
+   * any conflicts found. The validator is reused, so it is only valid until the next edit of a
+   * {@code MutableSchedule} on this thread.
+   */
+  public ScheduleValidator assignStart(StartAssignment assign) {
+    return assignStart(assign, factory.pooledValidator());
+  }
+
+  /**
+   * Assigns {@code assign} if that does not cause any conflicts, like {@link #assignStart}, but
+   * stops checking at the first conflict. Returns a validator that tells whether there was one, but
+   * does not describe it, and that is reused like that of {@link #assignStart}.
+   */
+  public ScheduleValidator tryAssignStart(StartAssignment assign) {
+    return assignStart(assign, factory.pooledChecker());
+  }
+
+  /**
+   * Assigns {@code assign} if {@code validator}, freshly reset, finds no conflicts with it. Returns
+   * {@code validator}.
+   */
+  ScheduleValidator assignStart(StartAssignment assign, ScheduleValidator validator) {
+    factory.validate(validator, view(), assign);
+    if (validator.isValid()) {
+      add(assign);
+    }
+    return validator;
+  }
+
+  /**
+   * Assigns all of {@code assigns}, in order, if none of them conflicts with this schedule or with
+   * those before it, and otherwise changes nothing. Returns a single validator describing every
+   * conflict found; once one assignment fails, the rest are still checked, but only against the
+   * assignments before the failure.
+   */
+  public ScheduleValidator assignAll(Iterable<StartAssignment> assigns) {
+    ScheduleValidator validator = factory.newValidator();
+    int mark = mark();
+    boolean valid = true;
+    for (StartAssignment assign : assigns) {
+      factory.validate(validator, view(), assign);
+      valid &= validator.isValid();
+      if (valid) {
+        add(assign);
+      }
+    }
+    if (!valid) {
+      rollback(mark);
+    }
+    return validator;
+  }
+
+  /**
+   * Removes the assignment starting in {@code room} at {@code period}, if there is one, and
+   * returns it.
+   */
+  public Optional<StartAssignment> removeStartingAt(ClassPeriod period, Room room) {
+    Optional<StartAssignment> startingAt = startingAt(period, room);
+    if (startingAt.isPresent()) {
+      checkArgument(!startingAt.get().isLocked());
+      remove(index.assignment(startingAt.get().getSection()));
+    }
+    return startingAt;
+  }
+
+  /**
+   * Assigns {@code assign}, first removing any assignments that conflict with it, unless it or any
+   * of those assignments are locked. If {@code assign} still cannot be added once its conflicts are
+   * removed, nothing is changed. Like that of {@link #assignStart}, the returned validator is only
+   * valid until the next edit on this thread.
+   */
+  public ScheduleValidator forceAssignStart(StartAssignment assign) {
+    return forceAssignStart(assign, factory.pooledValidator(), factory.pooledChecker());
+  }
+
+  /**
+   * Like {@link #forceAssignStart(StartAssignment)}, but finds the conflicts to remove with
+   * {@code validator} and makes the final assignment with {@code checker}, both freshly reset, so
+   * the caller decides whether the returned validator may be kept.
+   */
+  ScheduleValidator forceAssignStart(
+      StartAssignment assign, ScheduleValidator validator, ScheduleValidator checker) {
+    StartAssignment old = index.assignment(assign.getSection());
+    if (old != null && old.isLocked()) {
+      return validator;
+    }
+    factory.validate(validator, view(), assign);
+    if (!validator.isLocallyValid()) {
+      return validator;
+    }
+    for (GlobalConflict<PresentAssignment> conflict : validator.getGlobalPresentConflicts()) {
+      for (PresentAssignment conflicting : conflict.getConflictingAssignments()) {
+        if (conflicting.isLocked()) {
+          return validator;
+        }
+      }
+    }
+    for (GlobalConflict<StartAssignment> conflict : validator.getGlobalStartConflicts()) {
+      for (StartAssignment conflicting : conflict.getConflictingAssignments()) {
+        if (conflicting.isLocked()) {
+          return validator;
+        }
+      }
+    }
+    int mark = mark();
+    for (GlobalConflict<PresentAssignment> conflict : validator.getGlobalPresentConflicts()) {
+      for (PresentAssignment conflicting : conflict.getConflictingAssignments()) {
+        StartAssignment toRemove = conflicting.getStartAssignment();
+        removeStartingAt(toRemove.getPeriod(), toRemove.getRoom());
+      }
+    }
+    for (GlobalConflict<StartAssignment> conflict : validator.getGlobalStartConflicts()) {
+      for (StartAssignment conflicting : conflict.getConflictingAssignments()) {
+        removeStartingAt(conflicting.getPeriod(), conflicting.getRoom());
+      }
+    }
+    ScheduleValidator result = assignStart(assign, checker);
+    if (!result.isValid()) {
+      rollback(mark);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,213 @@
+package org.learningu.scheduling.schedule;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.UnmodifiableIterator;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.util.bst.IntBstMap;
+import org.learningu.scheduling.util.bst.IntTreapNode;
+
+/**
+ * An unmodifiable {@link Map} view of an {@link IntBstMap} keyed by the ordinals of some kind of
+ * program object, which translates between those objects and their ordinals. Iteration is in
+ * ordinal order.
+ *
+ * @author lowasser
+ */
+abstract class OrdinalMap<K, V> extends AbstractMap<K, V> {
+  static <V> Map<Section, V> bySection(final Program program, IntBstMap<V> map) {
+    checkNotNull(program);
+    return new OrdinalMap<Section, V>(map) {
+      @Override
+      int ordinal(Object key) {
+        return (key instanceof Section && ((Section) key).getProgram() == program)
+            ? program.getOrdinal((Section) key)
+            : -1;
+      }
+
+      @Override
+      Section key(int ordinal) {
+        return program.getSectionByOrdinal(ordinal);
+      }
+    };
+  }
+
+  static <V> Map<Room, V> byRoom(final Program program, IntBstMap<V> map) {
+    checkNotNull(program);
+    return new OrdinalMap<Room, V>(map) {
+      @Override
+      int ordinal(Object key) {
+        return (key instanceof Room && ((Room) key).getProgram() == program)
+            ? program.getOrdinal((Room) key)
+            : -1;
+      }
+
+      @Override
+      Room key(int ordinal) {
+        return program.getRoomByOrdinal(ordinal);
+      }
+    };
+  }
+
+  static <V> Map<ClassPeriod, V> byPeriod(final Program program, IntBstMap<V> map) {
+    checkNotNull(program);
+    return new OrdinalMap<ClassPeriod, V>(map) {
+      @Override
+      int ordinal(Object key) {
+        return (key instanceof ClassPeriod && ((ClassPeriod) key).getProgram() == program)
+            ? program.getOrdinal((ClassPeriod) key)
+            : -1;
+      }
+
+      @Override
+      ClassPeriod key(int ordinal) {
+        return program.getPeriodByOrdinal(ordinal);
+      }
+    };
+  }
+
+  private final IntBstMap<V> map;
+
+  private OrdinalMap(IntBstMap<V> map) {
+    this.map = checkNotNull(map);
+  }
+
+  /**
+   * Returns the ordinal of {@code key}, or -1 if it is not an object of the right kind from the
+   * right program.
+   */
+  abstract int ordinal(@Nullable Object key);
+
+  abstract K key(int ordinal);
+
+  @Override
+  public V get(@Nullable Object key) {
+    int ordinal = ordinal(key);
+    return (ordinal < 0) ? null : map.get(ordinal);
+  }
+
+  @Override
+  public boolean containsKey(@Nullable Object key) {
+    int ordinal = ordinal(key);
+    return ordinal >= 0 && map.containsKey(ordinal);
+  }
+
+  @Override
+  public int size() {
+    return map.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return map.isEmpty();
+  }
+
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    return new AbstractSet<Entry<K, V>>() {
+      @Override
+      public Iterator<Entry<K, V>> iterator() {
+        final Iterator<IntTreapNode<V>> nodes = map.entryIterator();
+        return new UnmodifiableIterator<Entry<K, V>>() {
+          @Override
+          public boolean hasNext() {
+            return nodes.hasNext();
+          }
+
+          @Override
+          public Entry<K, V> next() {
+            IntTreapNode<V> node = nodes.next();
+            return Maps.immutableEntry(key(node.getKey()), node.getValue());
+          }
+        };
+      }
+
+      @Override
+      public boolean contains(@Nullable Object o) {
+        if (o instanceof Entry) {
+          Entry<?, ?> entry = (Entry<?, ?>) o;
+          V value = get(entry.getKey());
+          return value != null && value.equals(entry.getValue());
+        }
+        return false;
+      }
+
+      @Override
+      public int size() {
+        return map.size();
+      }
+    };
+  }
+
+  @Override
+  public Set<K> keySet() {
+    return new AbstractSet<K>() {
+      @Override
+      public Iterator<K> iterator() {
+        final Iterator<IntTreapNode<V>> nodes = map.entryIterator();
+        return new UnmodifiableIterator<K>() {
+          @Override
+          public boolean hasNext() {
+            return nodes.hasNext();
+          }
+
+          @Override
+          public K next() {
+            return key(nodes.next().getKey());
+          }
+        };
+      }
+
+      @Override
+      public boolean contains(@Nullable Object o) {
+        return containsKey(o);
+      }
+
+      @Override
+      public int size() {
+        return map.size();
+      }
+    };
+  }
+
+  @Override
+  public Collection<V> values() {
+    return new AbstractCollection<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        final Iterator<IntTreapNode<V>> nodes = map.entryIterator();
+        return new UnmodifiableIterator<V>() {
+          @Override
+          public boolean hasNext() {
+            return nodes.hasNext();
+          }
+
+          @Override
+          public V next() {
+            return nodes.next().getValue();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return map.size();
+      }
+    };
+  }
+}
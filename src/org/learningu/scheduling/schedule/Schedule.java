@@ -6,34 +6,43 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
-import com.google.common.collect.AbstractIterator;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Maps.EntryTransformer;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 
-import java.util.AbstractMap;
 import java.util.AbstractSet;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.Nullable;
 
 import org.learningu.scheduling.graph.ClassPeriod;
 import org.learningu.scheduling.graph.Course;
 import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Resource;
 import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.graph.Section;
-import org.learningu.scheduling.logic.GlobalConflict;
+import org.learningu.scheduling.graph.Teacher;
+import org.learningu.scheduling.graph.TeacherGroup;
+import org.learningu.scheduling.graph.TimeBlock;
 import org.learningu.scheduling.logic.ScheduleLogic;
 import org.learningu.scheduling.logic.ScheduleValidator;
 import org.learningu.scheduling.util.ModifiedState;
-import org.learningu.scheduling.util.bst.BstMap;
+
+import edu.uchicago.lowasser.flaginjection.Flag;
 
 /**
  * An immutable representation of a schedule, with an associated LU {@link Program} and
@@ -52,47 +61,225 @@ public final class Schedule {
 
     private final Provider<ScheduleValidator> validatorProvider;
 
+    private final FeasibilityTable feasibility;
+
+    /*
+     * Validators reused by each thread for the edits of MutableSchedule, which are made for nearly
+     * every perturbation. They are separate because forceAssignStart checks its assignment while it
+     * still holds the result of validating it. Public methods of Schedule never return them.
+     */
+    private final ThreadLocal<ScheduleValidator> pooledValidator = newValidatorPool();
+
+    private final ThreadLocal<ScheduleValidator> pooledChecker = newValidatorPool();
+
+    @Flag(
+        name = "useOccupancyGrid",
+        description = "Index schedules with a dense room-by-period grid instead of per-room sorted "
+            + "maps of starting times.",
+        optional = true)
+    private boolean useOccupancyGrid = false;
+
     @Inject
-    Factory(Program program, ScheduleLogic logic, Provider<ScheduleValidator> validatorProvider) {
+    Factory(
+        Program program,
+        ScheduleLogic logic,
+        Provider<ScheduleValidator> validatorProvider,
+        ForkJoinPool pool) {
       this.program = program;
       this.logic = logic;
       this.validatorProvider = validatorProvider;
+      this.feasibility = FeasibilityTable.create(program, logic, pool);
     }
 
-    private Schedule create(BstMap<Room, BstMap<ClassPeriod, Section>> startingTimeTable,
-        BstMap<Section, StartAssignment> assignments) {
-      return new Schedule(this, startingTimeTable, assignments);
+    public Schedule create() {
+      return new Schedule(
+          this,
+          ScheduleIndex.create(program, useOccupancyGrid),
+          null,
+          ImmutableSet.<StartAssignment> of(),
+          ImmutableSet.<StartAssignment> of());
     }
 
-    public Schedule create() {
-      BstMap<Room, BstMap<ClassPeriod, Section>> roomMap = BstMap.create();
-      for (Room r : program.getRooms()) {
-        roomMap = roomMap.insert(r, BstMap.<ClassPeriod, Section> create());
+    private ThreadLocal<ScheduleValidator> newValidatorPool() {
+      return new ThreadLocal<ScheduleValidator>() {
+        @Override
+        protected ScheduleValidator initialValue() {
+          return validatorProvider.get();
+        }
+      };
+    }
+
+    ScheduleValidator newValidator() {
+      return validatorProvider.get().reset();
+    }
+
+    ScheduleValidator newChecker() {
+      return newValidator().failFast();
+    }
+
+    /**
+     * Returns this thread's reused validator, reset. It is only valid until the next use on the same
+     * thread, so only MutableSchedule, whose edits document that, may return it.
+     */
+    ScheduleValidator pooledValidator() {
+      return pooledValidator.get().reset();
+    }
+
+    /**
+     * Returns this thread's reused fail-fast validator, reset. Like {@link #pooledValidator()}, only
+     * MutableSchedule may return it.
+     */
+    ScheduleValidator pooledChecker() {
+      return pooledChecker.get().reset().failFast();
+    }
+
+    /**
+     * Checks whether {@code assign} could be added to {@code schedule}, stopping at the first
+     * conflict, which is not recorded. The returned validator is reused by the next call on the
+     * same thread.
+     */
+    ScheduleValidator check(Schedule schedule, StartAssignment assign) {
+      ScheduleValidator validator = pooledChecker();
+      validate(validator, schedule, assign);
+      return validator;
+    }
+
+    void validate(ScheduleValidator validator, Schedule schedule, StartAssignment assign) {
+      logic.validate(validator, schedule, assign);
+      for (PresentAssignment pAssign : assign.getPresentAssignments()) {
+        if (validator.isDone()) {
+          return;
+        }
+        logic.validate(validator, schedule, pAssign);
       }
-      return new Schedule(this, roomMap, BstMap.<Section, StartAssignment> create());
     }
   }
 
-  private final Factory factory;
+  final Factory factory;
 
-  private final BstMap<Room, BstMap<ClassPeriod, Section>> startingTimeTable;
+  final ScheduleIndex index;
 
-  private final BstMap<Section, StartAssignment> assignments;
+  /*
+   * The schedule this one was derived from, and the net assignments that were added to or removed
+   * from it to get this one. This lets state derived from a schedule, such as its score, be carried
+   * over to derived schedules by looking only at what changed; see deltaFromAncestor.
+   */
+  @Nullable
+  private volatile Schedule parent;
+
+  private final ImmutableSet<StartAssignment> added;
+
+  private final ImmutableSet<StartAssignment> removed;
 
   Schedule(
       Factory factory,
-      BstMap<Room, BstMap<ClassPeriod, Section>> startingTimeTable,
-      BstMap<Section, StartAssignment> assignments) {
-    this.startingTimeTable = checkNotNull(startingTimeTable);
+      ScheduleIndex index,
+      @Nullable Schedule parent,
+      ImmutableSet<StartAssignment> added,
+      ImmutableSet<StartAssignment> removed) {
     this.factory = checkNotNull(factory);
-    this.assignments = checkNotNull(assignments);
+    this.index = checkNotNull(index);
+    this.parent = parent;
+    this.added = checkNotNull(added);
+    this.removed = checkNotNull(removed);
+  }
+
+  private Schedule withAssignment(StartAssignment assign) {
+    return new Schedule(
+        factory,
+        index.with(assign),
+        this,
+        ImmutableSet.of(assign),
+        ImmutableSet.<StartAssignment> of());
   }
 
+  private Schedule withoutAssignment(StartAssignment assign) {
+    return new Schedule(
+        factory,
+        index.without(assign),
+        this,
+        ImmutableSet.<StartAssignment> of(),
+        ImmutableSet.of(assign));
+  }
+
+  /**
+   * Folds a change that added {@code stepAdded} and removed {@code stepRemoved} into the net
+   * changes {@code netAdded} and {@code netRemoved} of the changes before it.
+   */
+  static void accumulate(Set<StartAssignment> netAdded, Set<StartAssignment> netRemoved,
+      Iterable<StartAssignment> stepAdded, Iterable<StartAssignment> stepRemoved) {
+    for (StartAssignment assign : stepRemoved) {
+      if (!netAdded.remove(assign)) {
+        netRemoved.add(assign);
+      }
+    }
+    for (StartAssignment assign : stepAdded) {
+      if (!netRemoved.remove(assign)) {
+        netAdded.add(assign);
+      }
+    }
+  }
+
+  /**
+   * Finds the nearest schedule this one was derived from, looking back at most {@code maxSteps}
+   * derivation steps, that satisfies {@code isBase}, and returns the net changes that turn
+   * that schedule into this one. Returns {@code Optional.absent()} if there is no such schedule, or
+   * if it has been forgotten by {@link #forgetAncestors()}.
+   *
+   * <p>This is meant for maintaining state derived from schedules, like scores, incrementally: if
+   * {@code isBase} tests whether that state is already known for a schedule, the returned delta is
+   * exactly what needs to be applied to get the state for this schedule.
+   */
+  public Optional<ScheduleDelta> deltaFromAncestor(Predicate<? super Schedule> isBase,
+      int maxSteps) {
+    checkNotNull(isBase);
+    List<Schedule> path = Lists.newArrayList();
+    Schedule current = this;
+    while (!isBase.apply(current)) {
+      if (path.size() >= maxSteps) {
+        return Optional.absent();
+      }
+      Schedule next = current.parent;
+      if (next == null) {
+        return Optional.absent();
+      }
+      path.add(current);
+      current = next;
+    }
+    Set<StartAssignment> netAdded = Sets.newLinkedHashSet();
+    Set<StartAssignment> netRemoved = Sets.newLinkedHashSet();
+    for (Schedule step : Lists.reverse(path)) {
+      accumulate(netAdded, netRemoved, step.added, step.removed);
+    }
+    return Optional.of(new ScheduleDelta(current, this, netAdded, netRemoved));
+  }
+
+  /**
+   * Stops retaining the schedules this one was derived from. Call this once any incrementally
+   * maintained state for this schedule has been recorded, so that long chains of derived schedules
+   * do not keep all their ancestors reachable. This does not change the contents of the schedule.
+   */
+  public void forgetAncestors() {
+    parent = null;
+  }
+
+  /**
+   * Returns whether every assignment in this schedule is valid alongside all the others. Each
+   * assignment is checked against this schedule without it, so that the answer does not depend on
+   * the order the assignments might be made in; some logics, like prerequisites, only accept an
+   * assignment once others are in place.
+   */
   public boolean isCompletelyValid() {
-    Schedule base = factory.create();
     for (StartAssignment assign : getStartAssignments()) {
-      ModifiedState<ScheduleValidator, Schedule> modifiedState = base.assignStart(assign);
-      assert modifiedState.getResult().isValid();
+      Schedule others = new Schedule(
+          factory,
+          index.without(assign),
+          null,
+          ImmutableSet.<StartAssignment> of(),
+          ImmutableSet.<StartAssignment> of());
+      if (!factory.check(others, assign).isValid()) {
+        return false;
+      }
     }
     return true;
   }
@@ -102,16 +289,16 @@ public final class Schedule {
   }
 
   public Set<Section> getScheduledSections() {
-    return assignments.keySet();
+    return index.assignmentsBySection().keySet();
   }
 
   public Map<Section, StartAssignment> getAssignmentsBySection() {
-    return assignments;
+    return index.assignmentsBySection();
   }
 
   public final Map<ClassPeriod, StartAssignment> startingIn(final Room room) {
     return Maps.transformEntries(
-        startingTimeTable.get(room),
+        index.table.startingIn(room),
         new EntryTransformer<ClassPeriod, Section, StartAssignment>() {
 
           @Override
@@ -125,7 +312,7 @@ public final class Schedule {
     Set<Section> sections = getProgram().getSectionsOfCourse(course);
     List<StartAssignment> assigns = Lists.newArrayListWithCapacity(sections.size());
     for (Section s : sections) {
-      StartAssignment assign = assignments.get(s);
+      StartAssignment assign = index.assignment(s);
       if (assign != null) {
         assigns.add(assign);
       }
@@ -133,72 +320,59 @@ public final class Schedule {
     return Collections.unmodifiableList(assigns);
   }
 
-  public final Map<Room, PresentAssignment> occurringAt(final ClassPeriod period) {
-    checkNotNull(period);
-    return new OccurringAtMap(period);
+  /**
+   * Returns a map from rooms to the assignments taking place in them during {@code period}.
+   */
+  public final Map<Room, PresentAssignment> occurringAt(ClassPeriod period) {
+    return index.occurringAt(period);
   }
 
-  private final class OccurringAtMap extends AbstractMap<Room, PresentAssignment> {
-    private final class OccurringAtEntrySet extends AbstractSet<Entry<Room, PresentAssignment>> {
-      @Override
-      public boolean contains(Object o) {
-        if (o instanceof Entry) {
-          Entry<?, ?> entry = (Entry<?, ?>) o;
-          return Objects.equal(get(entry.getKey()), entry.getValue());
-        }
-        return false;
-      }
-
-      @Override
-      public Iterator<Entry<Room, PresentAssignment>> iterator() {
-        return new AbstractIterator<Entry<Room, PresentAssignment>>() {
-          final Iterator<Room> roomIterator = getProgram().getRooms().iterator();
-
-          @Override
-          protected Entry<Room, PresentAssignment> computeNext() {
-            while (roomIterator.hasNext()) {
-              Room room = roomIterator.next();
-              Optional<PresentAssignment> section = occurringAt(period, room);
-              if (section.isPresent()) {
-                return Maps.immutableEntry(room, section.get());
-              }
-            }
-            return endOfData();
-          }
-        };
-      }
-
-      @Override
-      public int size() {
-        return Iterators.size(iterator());
-      }
-    }
+  /**
+   * Returns whether {@code teacher} is teaching any scheduled section during {@code period}.
+   */
+  public boolean isTeaching(Teacher teacher, ClassPeriod period) {
+    return index.isTeaching(teacher, period);
+  }
 
-    private final ClassPeriod period;
+  /**
+   * Returns the number of members of {@code group} teaching scheduled sections during
+   * {@code period}, counting a teacher once for each section.
+   */
+  public int countTeaching(TeacherGroup group, ClassPeriod period) {
+    return index.groupTeaching(group, period);
+  }
 
-    private OccurringAtMap(ClassPeriod period) {
-      this.period = period;
-    }
+  /**
+   * Returns the number of scheduled sections of {@code course} that end before {@code period}
+   * starts, in {@code O(log n)} time.
+   */
+  public int countEndingBefore(Course course, ClassPeriod period) {
+    return index.countEndingBefore(course, period);
+  }
 
-    @Override
-    public boolean containsKey(Object room) {
-      BstMap<ClassPeriod, Section> roomMap = startingTimeTable.get(room);
-      return roomMap != null && roomMap.containsKey(period);
-    }
+  /**
+   * Returns the earliest period in which a scheduled section of {@code course} ends, or
+   * {@code Optional.absent()} if no section of {@code course} is scheduled.
+   */
+  public Optional<ClassPeriod> earliestEnding(Course course) {
+    return Optional.fromNullable(index.earliestEnding(course));
+  }
 
-    @Override
-    public PresentAssignment get(Object room) {
-      try {
-        return occurringAt(period, (Room) room).orNull();
-      } catch (ClassCastException e) {
-        return null;
-      }
-    }
+  /**
+   * Returns the mask of the lunch periods in {@code block} during which {@code teacher} is teaching
+   * a scheduled section, with bits numbered as in {@link Program#getLunchMask}. This is always zero
+   * if {@code block} has no lunch mask.
+   */
+  public int lunchesTeaching(Teacher teacher, TimeBlock block) {
+    return index.lunchTeaching(teacher, block);
+  }
 
-    @Override
-    public Set<Entry<Room, PresentAssignment>> entrySet() {
-      return new OccurringAtEntrySet();
-    }
+  /**
+   * Returns the number of scheduled sections taking place during {@code period} that require
+   * {@code resource}, whether or not their rooms provide it.
+   */
+  public int countDemand(Resource resource, ClassPeriod period) {
+    return index.resourceDemand(resource, period);
   }
 
   public final Set<StartAssignment> getStartAssignments() {
@@ -240,35 +414,34 @@ public final class Schedule {
 
     @Override
     public Iterator<StartAssignment> iterator() {
-      return assignments.values().iterator();
+      return index.assignmentsBySection().values().iterator();
     }
 
     @Override
     public boolean contains(Object o) {
       if (o instanceof StartAssignment) {
         StartAssignment assign = (StartAssignment) o;
-        Map<ClassPeriod, Section> map = startingTimeTable.get(assign.getRoom());
-        if (map != null) {
-          return Objects.equal(map.get(assign.getPeriod()), assign.getSection());
-        }
+        return assign.equals(index.assignment(assign.getSection()));
       }
       return false;
     }
 
     @Override
     public int size() {
-      int result = 0;
-      for (Map<ClassPeriod, Section> map : startingTimeTable.values()) {
-        result += map.size();
-      }
-      return result;
+      return index.assignments.size();
     }
   }
 
+  /**
+   * Returns an assignment chosen uniformly at random, or absent if there are none. This takes time
+   * logarithmic in the number of assignments.
+   */
+  public Optional<StartAssignment> randomAssignment(Random random) {
+    return Optional.fromNullable(index.randomAssignment(random));
+  }
+
   public Optional<StartAssignment> startingAt(ClassPeriod period, Room room) {
-    BstMap<ClassPeriod, Section> scheduleForRoom = startingTimeTable.get(room);
-    assert scheduleForRoom != null;
-    Section section = scheduleForRoom.get(period);
+    Section section = index.table.startingAt(room, period);
     if (section != null) {
       return Optional.of(StartAssignment.create(period, room, section));
     } else {
@@ -277,124 +450,122 @@ public final class Schedule {
   }
 
   public Optional<StartAssignment> startingBefore(Room room, ClassPeriod period) {
-    BstMap<ClassPeriod, Section> scheduleForRoom = startingTimeTable.get(room);
-    assert scheduleForRoom != null;
-    Entry<ClassPeriod, Section> floorEntry = scheduleForRoom.floorEntry(period);
-    if (floorEntry != null && floorEntry.getKey().getTimeBlock().equals(period.getTimeBlock())) {
-      return Optional.of(getAssignmentsBySection().get(floorEntry.getValue()));
+    Section section = index.table.startingBefore(room, period);
+    if (section != null) {
+      return Optional.of(index.assignment(section));
     } else {
       return Optional.absent();
     }
   }
 
   public Optional<PresentAssignment> occurringAt(ClassPeriod period, Room room) {
-    Optional<StartAssignment> startingBefore = startingBefore(room, period);
-    if (startingBefore.isPresent()) {
-      StartAssignment prevStart = startingBefore.get();
-      int relativeIndex = period.getIndex() - prevStart.getPeriod().getIndex();
-      if (relativeIndex >= 0 && relativeIndex < prevStart.getSection().getPeriodLength()) {
-        return Optional.of(prevStart.getPresentAssignment(relativeIndex));
-      }
+    Section section = index.table.occupying(room, period);
+    if (section != null) {
+      StartAssignment start = index.assignment(section);
+      return Optional.of(start.getPresentAssignment(
+          period.getIndex() - start.getPeriod().getIndex()));
     }
     return Optional.absent();
   }
 
+  /**
+   * Returns whether {@code assign} passes every check of this schedule's logic that depends only on
+   * the program. This is looked up in a table computed when the schedule factory was created.
+   */
+  public boolean isStaticallyFeasible(StartAssignment assign) {
+    return factory.feasibility.isFeasible(assign);
+  }
+
+  /**
+   * Returns a start assignment of {@code section}, chosen uniformly at random from those that are
+   * {@linkplain #isStaticallyFeasible statically feasible}, or absent if there are none. It may
+   * still conflict with the assignments in this schedule.
+   */
+  public Optional<StartAssignment> randomFeasibleStart(Section section, Random random) {
+    return Optional.fromNullable(factory.feasibility.randomFeasible(section, random));
+  }
+
+  /**
+   * Returns a mutable working copy of this schedule, which starts out with the same assignments.
+   */
+  public MutableSchedule mutableCopy() {
+    return new MutableSchedule(this);
+  }
+
   public ModifiedState<ScheduleValidator, Schedule> assignStart(StartAssignment assign) {
-    ScheduleValidator validator = factory.validatorProvider.get();
-    factory.logic.validate(validator, this, assign);
-    for (PresentAssignment pAssign : assign.getPresentAssignments()) {
-      factory.logic.validate(validator, this, pAssign);
+    ScheduleValidator validator = factory.newValidator();
+    factory.validate(validator, this, assign);
+    if (validator.isValid()) {
+      return ModifiedState.of(validator, withAssignment(assign));
+    } else {
+      return ModifiedState.of(validator, this);
     }
+  }
+
+  /**
+   * Assigns {@code assign} if that does not cause any conflicts, like {@link #assignStart}, but
+   * stops checking at the first conflict. The returned validator tells whether there was one, but
+   * does not describe it, so this is for callers that only need to know whether the assignment was
+   * made.
+   */
+  public ModifiedState<ScheduleValidator, Schedule> tryAssignStart(StartAssignment assign) {
+    ScheduleValidator validator = factory.newChecker();
+    factory.validate(validator, this, assign);
     if (validator.isValid()) {
-      BstMap<ClassPeriod, Section> roomMap = startingTimeTable.get(assign.getRoom());
-      return ModifiedState.of(
-          validator,
-          factory.create(
-              startingTimeTable.insert(
-                  assign.getRoom(),
-                  roomMap.insert(assign.getPeriod(), assign.getSection())),
-              assignments.insert(assign.getSection(), assign)));
+      return ModifiedState.of(validator, withAssignment(assign));
     } else {
       return ModifiedState.of(validator, this);
     }
   }
 
+  /**
+   * Assigns all of {@code assigns} if none of them conflicts with this schedule or with those
+   * before it in the batch, and otherwise changes nothing. The returned validator describes every
+   * conflict found.
+   */
+  public ModifiedState<ScheduleValidator, Schedule> assignAll(
+      Iterable<StartAssignment> assigns) {
+    MutableSchedule mutable = mutableCopy();
+    ScheduleValidator validator = mutable.assignAll(assigns);
+    return ModifiedState.of(validator, mutable.snapshot());
+  }
+
   public ModifiedState<Optional<StartAssignment>, Schedule> removeStartingAt(ClassPeriod period,
       Room room) {
     Optional<StartAssignment> startingAt = startingAt(period, room);
     Schedule revised = this;
     if (startingAt.isPresent()) {
       checkArgument(!startingAt.get().isLocked());
-      BstMap<ClassPeriod, Section> roomMap = startingTimeTable.get(room);
-      revised =
-          factory.create(
-              startingTimeTable.insert(room, roomMap.delete(period)),
-              assignments.delete(startingAt.get().getSection()));
+      revised = withoutAssignment(index.assignment(startingAt.get().getSection()));
     }
     return ModifiedState.of(startingAt, revised);
   }
 
+  /**
+   * Assigns {@code assign}, first removing any assignments that conflict with it, unless it or any
+   * of those assignments are locked. If {@code assign} still cannot be added once its conflicts are
+   * removed, nothing is changed.
+   */
   public ModifiedState<ScheduleValidator, Schedule> forceAssignStart(StartAssignment assign) {
-    StartAssignment old = getAssignmentsBySection().get(assign.getSection());
-    
-    ScheduleValidator validator = factory.validatorProvider.get();
-    if (old != null && old.isLocked()) {
-      return ModifiedState.of(validator, this);
-    }
-    factory.logic.validate(validator, this, assign);
-    for (PresentAssignment pAssign : assign.getPresentAssignments()) {
-      factory.logic.validate(validator, this, pAssign);
-    }
-    boolean doable = validator.isLocallyValid();
-    Schedule revised = this;
-    if (doable) {
-      for (GlobalConflict<PresentAssignment> conflict : validator.getGlobalPresentConflicts()) {
-        for (PresentAssignment conflicting : conflict.getConflictingAssignments()) {
-          if (conflicting.isLocked()) {
-            doable = false;
-            break;
-          }
-        }
-      }
-    }
-    if (doable) {
-      for (GlobalConflict<StartAssignment> conflict : validator.getGlobalStartConflicts()) {
-        for (StartAssignment conflicting : conflict.getConflictingAssignments()) {
-          if (conflicting.isLocked()) {
-            doable = false;
-            break;
-          }
-        }
-      }
-    }
-    if (doable) {
-      for (GlobalConflict<PresentAssignment> conflict : validator.getGlobalPresentConflicts()) {
-        for (PresentAssignment conflicting : conflict.getConflictingAssignments()) {
-          StartAssignment toRemove = conflicting.getStartAssignment();
-          revised = removeStartingAt(toRemove.getPeriod(), toRemove.getRoom()).getNewState();
-        }
-      }
-      for (GlobalConflict<StartAssignment> conflict : validator.getGlobalStartConflicts()) {
-        for (StartAssignment conflicting : conflict.getConflictingAssignments()) {
-          revised = removeStartingAt(conflicting.getPeriod(), conflicting.getRoom()).getNewState();
-        }
-      }
-      return revised.assignStart(assign);
-    } else {
-      return ModifiedState.of(validator, this);
-    }
+    MutableSchedule mutable = mutableCopy();
+    ScheduleValidator validator =
+        mutable.forceAssignStart(assign, factory.newValidator(), factory.newChecker());
+    return ModifiedState.of(validator, mutable.snapshot());
   }
 
-  private transient int hashCode = -1;
+  /**
+   * Returns a 64-bit fingerprint of the assignments in this schedule, ignoring whether they are
+   * locked. Equal schedules have equal fingerprints, and unequal schedules almost certainly do not.
+   * The fingerprint is maintained incrementally, so this takes constant time.
+   */
+  public long getFingerprint() {
+    return index.fingerprint;
+  }
 
   @Override
   public int hashCode() {
-    int result = hashCode;
-    if (result == -1) {
-      return hashCode = Objects.hashCode(getStartAssignments(), getProgram());
-    } else {
-      return result;
-    }
+    long fingerprint = index.fingerprint;
+    return (int) (fingerprint ^ (fingerprint >>> 32));
   }
 
   @Override
@@ -403,7 +574,7 @@ public final class Schedule {
       return true;
     } else if (obj instanceof Schedule) {
       Schedule other = (Schedule) obj;
-      if (hashCode != -1 && other.hashCode != -1 && hashCode != other.hashCode) {
+      if (index.fingerprint != other.index.fingerprint) {
         return false;
       }
       return Objects.equal(getStartAssignments(), other.getStartAssignments())
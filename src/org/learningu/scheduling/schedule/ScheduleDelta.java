@@ -0,0 +1,80 @@
+package org.learningu.scheduling.schedule;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.learningu.scheduling.graph.Section;
+
+/**
+ * The net difference between two schedules for the same program: the start assignments that are
+ * present in the later schedule but not the earlier one, and vice versa. A section that was moved
+ * has its old assignment in {@link #getRemoved()} and its new assignment in {@link #getAdded()}.
+ *
+ * @author lowasser
+ */
+public final class ScheduleDelta {
+  private final Schedule before;
+  private final Schedule after;
+  private final ImmutableSet<StartAssignment> added;
+  private final ImmutableSet<StartAssignment> removed;
+
+  ScheduleDelta(Schedule before, Schedule after, Set<StartAssignment> added,
+      Set<StartAssignment> removed) {
+    this.before = checkNotNull(before);
+    this.after = checkNotNull(after);
+    this.added = ImmutableSet.copyOf(added);
+    this.removed = ImmutableSet.copyOf(removed);
+  }
+
+  public Schedule getBefore() {
+    return before;
+  }
+
+  public Schedule getAfter() {
+    return after;
+  }
+
+  public Set<StartAssignment> getAdded() {
+    return added;
+  }
+
+  public Set<StartAssignment> getRemoved() {
+    return removed;
+  }
+
+  /**
+   * Returns a map from the removed assignment to the added assignment of each section that was
+   * scheduled in both schedules, but in different places.
+   */
+  public Map<StartAssignment, StartAssignment> getMoved() {
+    Map<Section, StartAssignment> removedBySection =
+        Maps.newHashMapWithExpectedSize(removed.size());
+    for (StartAssignment assign : removed) {
+      removedBySection.put(assign.getSection(), assign);
+    }
+    ImmutableMap.Builder<StartAssignment, StartAssignment> builder = ImmutableMap.builder();
+    for (StartAssignment assign : added) {
+      StartAssignment old = removedBySection.get(assign.getSection());
+      if (old != null) {
+        builder.put(old, assign);
+      }
+    }
+    return builder.build();
+  }
+
+  public boolean isEmpty() {
+    return added.isEmpty() && removed.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).add("added", added).add("removed", removed).toString();
+  }
+}
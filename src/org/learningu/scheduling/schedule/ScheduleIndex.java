@@ -0,0 +1,367 @@
+package org.learningu.scheduling.schedule;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Course;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Resource;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.Teacher;
+import org.learningu.scheduling.graph.TeacherGroup;
+import org.learningu.scheduling.graph.TimeBlock;
+import org.learningu.scheduling.util.PersistentArray;
+import org.learningu.scheduling.util.PersistentIntArray;
+import org.learningu.scheduling.util.bst.EditToken;
+import org.learningu.scheduling.util.bst.IntBstMap;
+import org.learningu.scheduling.util.bst.IntTreapNode;
+
+/**
+ * The persistent indices behind a {@link Schedule}, which are all updated together when an
+ * assignment is added or removed. Like the indices themselves, this is immutable, and updates
+ * return a new instance sharing most of its structure with the old one.
+ *
+ * @author lowasser
+ */
+final class ScheduleIndex {
+  static ScheduleIndex create(Program program, boolean useOccupancyGrid) {
+    ScheduleTable table = useOccupancyGrid
+        ? GridScheduleTable.create(program)
+        : BstScheduleTable.create(program);
+    return new ScheduleIndex(
+        program,
+        table,
+        IntBstMap.<StartAssignment> create(),
+        PersistentArray.create(
+            program.getPeriods().size(),
+            IntBstMap.<PresentAssignment> create()),
+        PersistentIntArray.create(program.getTeachers().size() * program.getPeriods().size()),
+        PersistentIntArray.create(program.getTeacherGroupCount() * program.getPeriods().size()),
+        PersistentIntArray.create(program.getResources().size() * program.getPeriods().size()),
+        PersistentIntArray.create(program.getTeachers().size() * program.getTimeBlocks().size()),
+        PersistentArray.create(program.getCourses().size(), IntBstMap.<StartAssignment> create()),
+        0L);
+  }
+
+  private final Program program;
+
+  /**
+   * The sections scheduled in each room, by time.
+   */
+  final ScheduleTable table;
+
+  /**
+   * The assignment of each scheduled section, keyed by section ordinal.
+   */
+  final IntBstMap<StartAssignment> assignments;
+
+  /**
+   * For each period, by ordinal, the assignments taking place then, keyed by room ordinal.
+   */
+  final PersistentArray<IntBstMap<PresentAssignment>> occurring;
+
+  /**
+   * For each teacher and period, at {@code teacherOrdinal * nPeriods + periodOrdinal}, the number
+   * of scheduled sections that teacher is teaching then. This is normally zero or one, but it is
+   * a count so that removing one of two conflicting sections leaves the teacher busy.
+   */
+  final PersistentIntArray teaching;
+
+  /**
+   * For each teacher group and period, at {@code groupOrdinal * nPeriods + periodOrdinal}, the
+   * number of members of that group teaching then, counting a teacher once for each section.
+   */
+  final PersistentIntArray groupTeaching;
+
+  /**
+   * For each resource and period, at {@code resourceOrdinal * nPeriods + periodOrdinal}, the
+   * number of sections requiring that resource taking place then.
+   */
+  final PersistentIntArray resourceDemand;
+
+  /**
+   * For each teacher and time block, at {@code teacherOrdinal * nBlocks + blockOrdinal}, the mask
+   * of the lunch periods in that block during which the teacher is teaching, as in
+   * {@link Program#getLunchMask}. This is derived from {@link #teaching}, and is zero for blocks
+   * without lunch masks.
+   */
+  final PersistentIntArray lunchTeaching;
+
+  /**
+   * For each course, by ordinal, the assignments of its scheduled sections, keyed by
+   * {@code lastPeriodOrdinal * nSections + sectionOrdinal}: that is, sorted by the periods in which
+   * they end. Since period ordinals are chronological, the sections ending before a period are a
+   * prefix of this map.
+   */
+  final PersistentArray<IntBstMap<StartAssignment>> endings;
+
+  /**
+   * The exclusive or of {@link #fingerprint(StartAssignment)} over all the assignments.
+   */
+  final long fingerprint;
+
+  private ScheduleIndex(
+      Program program,
+      ScheduleTable table,
+      IntBstMap<StartAssignment> assignments,
+      PersistentArray<IntBstMap<PresentAssignment>> occurring,
+      PersistentIntArray teaching,
+      PersistentIntArray groupTeaching,
+      PersistentIntArray resourceDemand,
+      PersistentIntArray lunchTeaching,
+      PersistentArray<IntBstMap<StartAssignment>> endings,
+      long fingerprint) {
+    this.program = checkNotNull(program);
+    this.table = checkNotNull(table);
+    this.assignments = checkNotNull(assignments);
+    this.occurring = checkNotNull(occurring);
+    this.teaching = checkNotNull(teaching);
+    this.groupTeaching = checkNotNull(groupTeaching);
+    this.resourceDemand = checkNotNull(resourceDemand);
+    this.lunchTeaching = checkNotNull(lunchTeaching);
+    this.endings = checkNotNull(endings);
+    this.fingerprint = fingerprint;
+  }
+
+  @Nullable
+  StartAssignment assignment(Section section) {
+    return assignments.get(program.getOrdinal(section));
+  }
+
+  @Nullable
+  StartAssignment randomAssignment(Random random) {
+    return assignments.isEmpty() ? null : assignments.randomEntry(random).getValue();
+  }
+
+  Map<Section, StartAssignment> assignmentsBySection() {
+    return OrdinalMap.bySection(program, assignments);
+  }
+
+  Map<Room, PresentAssignment> occurringAt(ClassPeriod period) {
+    return OrdinalMap.byRoom(program, occurring.get(program.getOrdinal(period)));
+  }
+
+  boolean isTeaching(Teacher teacher, ClassPeriod period) {
+    return teaching.get(teachingIndex(teacher, program.getOrdinal(period))) > 0;
+  }
+
+  int groupTeaching(TeacherGroup group, ClassPeriod period) {
+    return groupTeaching.get(groupTeachingIndex(group, program.getOrdinal(period)));
+  }
+
+  int lunchTeaching(Teacher teacher, TimeBlock block) {
+    return lunchTeaching.get(lunchTeachingIndex(teacher, block));
+  }
+
+  private int lunchTeachingIndex(Teacher teacher, TimeBlock block) {
+    return program.getOrdinal(teacher) * program.getTimeBlocks().size()
+        + program.getOrdinal(block);
+  }
+
+  /**
+   * Returns the number of scheduled sections of {@code course} whose last period is before
+   * {@code period}.
+   */
+  int countEndingBefore(Course course, ClassPeriod period) {
+    return endings
+        .get(program.getOrdinal(course))
+        .rank(program.getOrdinal(period) * program.getSections().size());
+  }
+
+  /**
+   * Returns the earliest last period of any scheduled section of {@code course}, or {@code null}
+   * if none are scheduled.
+   */
+  @Nullable
+  ClassPeriod earliestEnding(Course course) {
+    IntTreapNode<StartAssignment> first = endings.get(program.getOrdinal(course)).firstEntry();
+    return (first == null)
+        ? null
+        : program.getPeriodByOrdinal(first.getKey() / program.getSections().size());
+  }
+
+  private int endingKey(StartAssignment assign) {
+    // the periods of an assignment are consecutive in the chronological numbering
+    int lastPeriod = program.getOrdinal(assign.getPeriod()) + assign.getSection().getPeriodLength()
+        - 1;
+    return lastPeriod * program.getSections().size() + program.getOrdinal(assign.getSection());
+  }
+
+  int resourceDemand(Resource resource, ClassPeriod period) {
+    return resourceDemand.get(resourceDemandIndex(resource, program.getOrdinal(period)));
+  }
+
+  private int resourceDemandIndex(Resource resource, int periodOrdinal) {
+    return program.getOrdinal(resource) * program.getPeriods().size() + periodOrdinal;
+  }
+
+  private int groupTeachingIndex(TeacherGroup group, int periodOrdinal) {
+    return program.getOrdinal(group) * program.getPeriods().size() + periodOrdinal;
+  }
+
+  private int teachingIndex(Teacher teacher, int periodOrdinal) {
+    return program.getOrdinal(teacher) * program.getPeriods().size() + periodOrdinal;
+  }
+
+  private PersistentIntArray teaching(StartAssignment assign, int delta,
+      @Nullable EditToken owner) {
+    PersistentIntArray revised = teaching;
+    List<Teacher> teachers = program.teachersFor(assign.getSection());
+    for (ClassPeriod period : assign.getPresentPeriods()) {
+      int p = program.getOrdinal(period);
+      for (Teacher teacher : teachers) {
+        revised = revised.plus(teachingIndex(teacher, p), delta, owner);
+      }
+    }
+    return revised;
+  }
+
+  private PersistentIntArray groupTeaching(StartAssignment assign, int delta,
+      @Nullable EditToken owner) {
+    PersistentIntArray revised = groupTeaching;
+    List<Teacher> teachers = program.teachersFor(assign.getSection());
+    for (ClassPeriod period : assign.getPresentPeriods()) {
+      int p = program.getOrdinal(period);
+      for (Teacher teacher : teachers) {
+        for (TeacherGroup group : program.getGroups(teacher)) {
+          revised = revised.plus(groupTeachingIndex(group, p), delta, owner);
+        }
+      }
+    }
+    return revised;
+  }
+
+  /**
+   * Returns {@link #lunchTeaching} brought up to date with {@code revisedTeaching} for the lunch
+   * periods of {@code assign}, if it has any.
+   */
+  private PersistentIntArray lunchTeaching(
+      StartAssignment assign,
+      PersistentIntArray revisedTeaching,
+      @Nullable EditToken owner) {
+    if (program.getLunchMask(assign.getTimeBlock()) == 0) {
+      return lunchTeaching;
+    }
+    PersistentIntArray revised = lunchTeaching;
+    for (Teacher teacher : program.teachersFor(assign.getSection())) {
+      int i = lunchTeachingIndex(teacher, assign.getTimeBlock());
+      int mask = revised.get(i);
+      for (ClassPeriod period : assign.getPresentPeriods()) {
+        if (period.isLunch()) {
+          int bit = 1 << period.getIndex();
+          if (revisedTeaching.get(teachingIndex(teacher, program.getOrdinal(period))) > 0) {
+            mask |= bit;
+          } else {
+            mask &= ~bit;
+          }
+        }
+      }
+      revised = revised.with(i, mask, owner);
+    }
+    return revised;
+  }
+
+  private PersistentIntArray resourceDemand(StartAssignment assign, int delta,
+      @Nullable EditToken owner) {
+    PersistentIntArray revised = resourceDemand;
+    for (Resource resource : program.resourceRequirements(assign.getSection())) {
+      for (ClassPeriod period : assign.getPresentPeriods()) {
+        int index = resourceDemandIndex(resource, program.getOrdinal(period));
+        revised = revised.plus(index, delta, owner);
+      }
+    }
+    return revised;
+  }
+
+  /**
+   * Returns a well-mixed 64-bit hash of the section, room and period of {@code assign}, so that
+   * the exclusive or of these over a set of assignments identifies the set with high probability.
+   * Like {@link StartAssignment#equals}, this ignores whether the assignment is locked.
+   */
+  private long fingerprint(StartAssignment assign) {
+    long key = ((long) program.getOrdinal(assign.getSection()) << 40)
+        ^ ((long) program.getOrdinal(assign.getRoom()) << 20)
+        ^ program.getOrdinal(assign.getPeriod());
+    // the SplitMix64 finalizer
+    key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+    key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+    return key ^ (key >>> 31);
+  }
+
+  ScheduleIndex with(StartAssignment assign) {
+    return with(assign, null);
+  }
+
+  ScheduleIndex without(StartAssignment assign) {
+    return without(assign, null);
+  }
+
+  /**
+   * Returns the indices with {@code assign} added. If {@code owner} is not {@code null}, these
+   * indices may be modified in place, as described in {@link EditToken}.
+   */
+  ScheduleIndex with(StartAssignment assign, @Nullable EditToken owner) {
+    int r = program.getOrdinal(assign.getRoom());
+    PersistentArray<IntBstMap<PresentAssignment>> revisedOccurring = occurring;
+    for (PresentAssignment pAssign : assign.getPresentAssignments()) {
+      int p = program.getOrdinal(pAssign.getPeriod());
+      revisedOccurring =
+          revisedOccurring.with(p, revisedOccurring.get(p).insert(r, pAssign, owner), owner);
+    }
+    PersistentIntArray revisedTeaching = teaching(assign, 1, owner);
+    int c = program.getOrdinal(assign.getCourse());
+    return new ScheduleIndex(
+        program,
+        table.with(assign, owner),
+        assignments.insert(program.getOrdinal(assign.getSection()), assign, owner),
+        revisedOccurring,
+        revisedTeaching,
+        groupTeaching(assign, 1, owner),
+        resourceDemand(assign, 1, owner),
+        lunchTeaching(assign, revisedTeaching, owner),
+        endings.with(c, endings.get(c).insert(endingKey(assign), assign, owner), owner),
+        fingerprint ^ fingerprint(assign));
+  }
+
+  /**
+   * Returns the indices with {@code assign} removed, modifying them in place as in {@link #with}.
+   */
+  ScheduleIndex without(StartAssignment assign, @Nullable EditToken owner) {
+    int r = program.getOrdinal(assign.getRoom());
+    PersistentArray<IntBstMap<PresentAssignment>> revisedOccurring = occurring;
+    for (PresentAssignment pAssign : assign.getPresentAssignments()) {
+      int p = program.getOrdinal(pAssign.getPeriod());
+      IntBstMap<PresentAssignment> atPeriod = revisedOccurring.get(p);
+      PresentAssignment current = atPeriod.get(r);
+      if (current != null && current.getSection().equals(assign.getSection())) {
+        revisedOccurring = revisedOccurring.with(p, atPeriod.delete(r, owner), owner);
+      }
+    }
+    PersistentIntArray revisedTeaching = teaching(assign, -1, owner);
+    PersistentArray<IntBstMap<StartAssignment>> revisedEndings = endings;
+    StartAssignment scheduled = assignment(assign.getSection());
+    if (scheduled != null) {
+      int c = program.getOrdinal(assign.getCourse());
+      revisedEndings =
+          revisedEndings.with(c, revisedEndings.get(c).delete(endingKey(scheduled), owner), owner);
+    }
+    return new ScheduleIndex(
+        program,
+        table.without(assign, owner),
+        assignments.delete(program.getOrdinal(assign.getSection()), owner),
+        revisedOccurring,
+        revisedTeaching,
+        groupTeaching(assign, -1, owner),
+        resourceDemand(assign, -1, owner),
+        lunchTeaching(assign, revisedTeaching, owner),
+        revisedEndings,
+        fingerprint ^ fingerprint(assign));
+  }
+}
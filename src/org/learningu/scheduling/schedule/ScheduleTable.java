@@ -0,0 +1,63 @@
+package org.learningu.scheduling.schedule;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.util.bst.EditToken;
+
+/**
+ * An immutable index from rooms and periods to the sections scheduled there, which backs the
+ * room- and time-based queries of a {@link Schedule}. Updates return a new table and, unless made
+ * with an {@link EditToken}, leave this one unchanged.
+ *
+ * <p>Tables assume that no two sections in them overlap in the same room, which the room conflict
+ * logic guarantees for any schedule built through {@link Schedule#assignStart}.
+ *
+ * @author lowasser
+ */
+interface ScheduleTable {
+  /**
+   * Returns the section starting in {@code room} at {@code period}, or {@code null} if there is
+   * none.
+   */
+  @Nullable
+  Section startingAt(Room room, ClassPeriod period);
+
+  /**
+   * Returns the section with the latest start in {@code room} in the time block of {@code period}
+   * at or before {@code period}, whether or not it is still going on at {@code period}, or
+   * {@code null} if there is none.
+   */
+  @Nullable
+  Section startingBefore(Room room, ClassPeriod period);
+
+  /**
+   * Returns the section taking place in {@code room} during {@code period}, or {@code null} if the
+   * room is empty then.
+   */
+  @Nullable
+  Section occupying(Room room, ClassPeriod period);
+
+  /**
+   * Returns a map from periods to the sections starting in {@code room} at those periods, in
+   * chronological order.
+   */
+  Map<ClassPeriod, Section> startingIn(Room room);
+
+  /**
+   * Returns a table with {@code assign} added. If {@code owner} is not {@code null}, parts of this
+   * table created by earlier edits with the same owner may be modified in place, as described in
+   * {@link EditToken}.
+   */
+  ScheduleTable with(StartAssignment assign, @Nullable EditToken owner);
+
+  /**
+   * Returns a table with {@code assign} removed, modifying parts of this table in place as in
+   * {@link #with}.
+   */
+  ScheduleTable without(StartAssignment assign, @Nullable EditToken owner);
+}
@@ -1,12 +1,19 @@
 package org.learningu.scheduling.schedule;
 
-import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.util.List;
+import java.util.Set;
 
 import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.logic.ScheduleValidator;
 import org.learningu.scheduling.schedule.SerialSchedules.SerialSchedule;
 import org.learningu.scheduling.schedule.SerialSchedules.SerialStartAssignment;
 import org.learningu.scheduling.util.ModifiedState;
+import org.learningu.scheduling.util.bst.BstDiffVisitor;
 
 /**
  * Utilities for converting between the protobuf-based {@link SerialSchedule} objects and the
@@ -19,35 +26,64 @@ public final class Schedules {
   }
 
   public static final Schedule deserialize(Schedule.Factory factory, SerialSchedule serial) {
-    Schedule current = factory.create();
-    Program program = current.getProgram();
+    Schedule empty = factory.create();
+    Program program = empty.getProgram();
 
-    boolean good = true;
+    List<StartAssignment> assigns =
+        Lists.newArrayListWithCapacity(serial.getAssignmentCount());
     for (SerialStartAssignment serialAssign : serial.getAssignmentList()) {
       try {
-      StartAssignment assign = StartAssignment.create(
-          program.getPeriod(serialAssign.getPeriodId()),
-          program.getRoom(serialAssign.getRoomId()),
-          program.getSection(serialAssign.getSectionId()),
-          serialAssign.getLocked());
-      ModifiedState<ScheduleValidator, Schedule> modified = current.assignStart(assign);
-      if (!(modified.getResult().isValid() && modified.getNewState() != current)) {
-        System.out.printf(
-            "Schedule conflict when adding assignment: %s%n",
-            modified.getResult());
-        good = false;
-      }
-      current = modified.getNewState();
+        assigns.add(StartAssignment.create(
+            program.getPeriod(serialAssign.getPeriodId()),
+            program.getRoom(serialAssign.getRoomId()),
+            program.getSection(serialAssign.getSectionId()),
+            serialAssign.getLocked()));
       } catch (IllegalStateException | IllegalArgumentException e) {
         System.out.printf("Ignoring %s, continuing%n", e.getMessage());
       }
     }
 
-    if (!good) {
+    ModifiedState<ScheduleValidator, Schedule> modified = empty.assignAll(assigns);
+    if (!modified.getResult().isValid()) {
+      System.out.printf("Schedule conflict when adding assignments: %s%n", modified.getResult());
       throw new AssertionError();
     }
-    
-    return current;
+    return modified.getNewState();
+  }
+
+  /**
+   * Returns the assignments added and removed to turn {@code before} into {@code after}, which must
+   * be schedules for the same program. This walks the two schedules in parallel and skips
+   * everything they share, so for schedules derived from one another it takes time roughly
+   * proportional to the number of changes, not the size of the schedules.
+   */
+  public static ScheduleDelta diff(Schedule before, Schedule after) {
+    checkArgument(
+        before.getProgram() == after.getProgram(),
+        "Cannot compare schedules for different programs");
+    final Set<StartAssignment> added = Sets.newLinkedHashSet();
+    final Set<StartAssignment> removed = Sets.newLinkedHashSet();
+    before.index.assignments.diff(
+        after.index.assignments,
+        new BstDiffVisitor<Integer, StartAssignment>() {
+          @Override
+          public void removed(Integer section, StartAssignment assign) {
+            removed.add(assign);
+          }
+
+          @Override
+          public void added(Integer section, StartAssignment assign) {
+            added.add(assign);
+          }
+
+          @Override
+          public void changed(Integer section, StartAssignment oldAssign,
+              StartAssignment newAssign) {
+            removed.add(oldAssign);
+            added.add(newAssign);
+          }
+        });
+    return new ScheduleDelta(before, after, added, removed);
   }
 
   public static final SerialSchedule serialize(Schedule schedule) {
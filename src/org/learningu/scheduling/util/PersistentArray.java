@@ -0,0 +1,110 @@
+package org.learningu.scheduling.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.util.bst.EditToken;
+
+/**
+ * A fixed-length, immutable array that supports efficient updates: setting an element returns a
+ * new array that shares all but {@code O(log length)} of its storage with the original. This is
+ * the object counterpart of {@link PersistentIntArray}, and uses the same 32-way trie layout.
+ *
+ * <p>Each node records the {@link EditToken} of the update that created it, in the slot after its
+ * elements. Updates with that same token modify the node in place instead of copying it.
+ *
+ * @author lowasser
+ */
+public final class PersistentArray<E> {
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+
+  /**
+   * Returns an array of {@code length} copies of {@code initial}.
+   */
+  public static <E> PersistentArray<E> create(int length, @Nullable E initial) {
+    checkArgument(length >= 0);
+    int shift = 0;
+    Object[] root = new Object[WIDTH + 1];
+    for (int i = 0; i < WIDTH; i++) {
+      root[i] = initial;
+    }
+    // Until an element is set, every node on a level can be the same node, since it has no owner.
+    while ((WIDTH << shift) < length) {
+      Object[] level = new Object[WIDTH + 1];
+      for (int i = 0; i < WIDTH; i++) {
+        level[i] = root;
+      }
+      root = level;
+      shift += BITS;
+    }
+    return new PersistentArray<E>(length, shift, root);
+  }
+
+  private final int length;
+
+  /**
+   * The number of index bits below the root. The root is a leaf if this is zero.
+   */
+  private final int shift;
+
+  private final Object[] root;
+
+  private PersistentArray(int length, int shift, Object[] root) {
+    this.length = length;
+    this.shift = shift;
+    this.root = root;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  @SuppressWarnings("unchecked")
+  public E get(int index) {
+    checkElementIndex(index, length);
+    Object[] node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = (Object[]) node[(index >>> level) & MASK];
+    }
+    return (E) node[index & MASK];
+  }
+
+  /**
+   * Returns an array equal to this one, except that the element at {@code index} is {@code value}.
+   * Returns this array if that element is already the same object as {@code value}.
+   */
+  public PersistentArray<E> with(int index, @Nullable E value) {
+    return with(index, value, null);
+  }
+
+  /**
+   * Returns an array equal to this one, except that the element at {@code index} is {@code value}.
+   * If {@code owner} is not {@code null}, nodes created by earlier updates with the same owner are
+   * modified in place, as described in {@link EditToken}, and this array may be returned with its
+   * element changed.
+   */
+  public PersistentArray<E> with(int index, @Nullable E value, @Nullable EditToken owner) {
+    if (get(index) == value) {
+      return this;
+    }
+    Object[] revised = with(root, shift, index, value, owner);
+    return (revised == root) ? this : new PersistentArray<E>(length, shift, revised);
+  }
+
+  private static Object[] with(Object[] node, int level, int index, Object value,
+      @Nullable EditToken owner) {
+    Object[] result = node;
+    if (owner == null || node[WIDTH] != owner) {
+      result = node.clone();
+      result[WIDTH] = owner;
+    }
+    int i = (index >>> level) & MASK;
+    result[i] =
+        (level == 0) ? value : with((Object[]) node[i], level - BITS, index, value, owner);
+    return result;
+  }
+}
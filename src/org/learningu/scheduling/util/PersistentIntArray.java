@@ -0,0 +1,153 @@
+package org.learningu.scheduling.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import javax.annotation.Nullable;
+
+import org.learningu.scheduling.util.bst.EditToken;
+
+/**
+ * A fixed-length, immutable array of {@code int} values that supports efficient updates: setting
+ * an element returns a new array that shares all but {@code O(log length)} of its storage with the
+ * original. The elements are stored in the leaves of a 32-way trie, so reads and updates touch one
+ * small array per level, and a three-level trie already holds 32768 elements.
+ *
+ * <p>All elements of a newly created array are zero.
+ *
+ * <p>Each node records the {@link EditToken} of the update that created it, and updates with that
+ * same token modify the node in place instead of copying it.
+ *
+ * @author lowasser
+ */
+public final class PersistentIntArray {
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+
+  /**
+   * Returns an array of {@code length} zeroes.
+   */
+  public static PersistentIntArray create(int length) {
+    checkArgument(length >= 0);
+    int shift = 0;
+    Object root = new Leaf(new int[WIDTH], null);
+    // An all-zero trie can share one node per level, since nodes without an owner are never
+    // modified.
+    while ((WIDTH << shift) < length) {
+      Object[] level = new Object[WIDTH + 1];
+      for (int i = 0; i < WIDTH; i++) {
+        level[i] = root;
+      }
+      root = level;
+      shift += BITS;
+    }
+    return new PersistentIntArray(length, shift, root);
+  }
+
+  /**
+   * A leaf of the trie. Interior nodes are {@code Object[]} arrays that keep their owner in the
+   * slot after their children, but an {@code int[]} has no room for one.
+   */
+  private static final class Leaf {
+    final int[] values;
+    @Nullable
+    final EditToken owner;
+
+    Leaf(int[] values, @Nullable EditToken owner) {
+      this.values = values;
+      this.owner = owner;
+    }
+  }
+
+  private final int length;
+
+  /**
+   * The number of index bits below the root, which is a {@link Leaf} if this is zero and an
+   * {@code Object[]} of child nodes otherwise.
+   */
+  private final int shift;
+
+  private final Object root;
+
+  private PersistentIntArray(int length, int shift, Object root) {
+    this.length = length;
+    this.shift = shift;
+    this.root = root;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public int get(int index) {
+    checkElementIndex(index, length);
+    Object node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = ((Object[]) node)[(index >>> level) & MASK];
+    }
+    return ((Leaf) node).values[index & MASK];
+  }
+
+  /**
+   * Returns an array equal to this one, except that the element at {@code index} is {@code value}.
+   * Returns this array if that element is already {@code value}.
+   */
+  public PersistentIntArray with(int index, int value) {
+    return with(index, value, null);
+  }
+
+  /**
+   * Returns an array equal to this one, except that the element at {@code index} is {@code value}.
+   * If {@code owner} is not {@code null}, nodes created by earlier updates with the same owner are
+   * modified in place, as described in {@link EditToken}, and this array may be returned with its
+   * element changed.
+   */
+  public PersistentIntArray with(int index, int value, @Nullable EditToken owner) {
+    if (get(index) == value) {
+      return this;
+    }
+    Object revised = with(root, shift, index, value, owner);
+    return (revised == root) ? this : new PersistentIntArray(length, shift, revised);
+  }
+
+  /**
+   * Returns an array equal to this one, except that {@code delta} is added to the element at
+   * {@code index}.
+   */
+  public PersistentIntArray plus(int index, int delta) {
+    return plus(index, delta, null);
+  }
+
+  /**
+   * Returns an array equal to this one, except that {@code delta} is added to the element at
+   * {@code index}, modifying nodes in place as in {@link #with(int, int, EditToken)}.
+   */
+  public PersistentIntArray plus(int index, int delta, @Nullable EditToken owner) {
+    return with(index, get(index) + delta, owner);
+  }
+
+  private static Object with(Object node, int level, int index, int value,
+      @Nullable EditToken owner) {
+    if (level == 0) {
+      Leaf leaf = (Leaf) node;
+      if (owner != null && leaf.owner == owner) {
+        leaf.values[index & MASK] = value;
+        return leaf;
+      }
+      int[] values = leaf.values.clone();
+      values[index & MASK] = value;
+      return new Leaf(values, owner);
+    } else {
+      Object[] children = (Object[]) node;
+      Object[] result = children;
+      if (owner == null || children[WIDTH] != owner) {
+        result = children.clone();
+        result[WIDTH] = owner;
+      }
+      int i = (index >>> level) & MASK;
+      result[i] = with(children[i], level - BITS, index, value, owner);
+      return result;
+    }
+  }
+}
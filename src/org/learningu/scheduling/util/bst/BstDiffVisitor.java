@@ -0,0 +1,23 @@
+package org.learningu.scheduling.util.bst;
+
+/**
+ * Receives the differences between two maps found by {@link BstMap#diff}, in key order.
+ *
+ * @author lowasser
+ */
+public interface BstDiffVisitor<K, V> {
+  /**
+   * Called for a key that is mapped in the first map but not the second.
+   */
+  void removed(K key, V value);
+
+  /**
+   * Called for a key that is mapped in the second map but not the first.
+   */
+  void added(K key, V value);
+
+  /**
+   * Called for a key that is mapped to unequal values in the two maps.
+   */
+  void changed(K key, V oldValue, V newValue);
+}
@@ -0,0 +1,10 @@
+package org.learningu.scheduling.util.bst;
+
+/**
+ * Receives the entries of a {@link BstMap} from {@link BstMap#forEach}, in key order.
+ *
+ * @author lowasser
+ */
+public interface BstEntryVisitor<K, V> {
+  void visit(K key, V value);
+}
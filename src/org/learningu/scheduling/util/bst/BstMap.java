@@ -15,21 +15,25 @@
 package org.learningu.scheduling.util.bst;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Preconditions.checkState;
 import static org.learningu.scheduling.util.bst.BstSide.LEFT;
 import static org.learningu.scheduling.util.bst.BstSide.RIGHT;
 
-import com.google.common.collect.AbstractLinkedIterator;
+import com.google.common.base.Objects;
 import com.google.common.collect.BoundType;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
+import com.google.common.collect.UnmodifiableIterator;
 import com.google.common.primitives.Ints;
 
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
@@ -39,28 +43,126 @@ import javax.annotation.Nullable;
 
 /**
  * Drop-in replacement for JDK 6 TreeMap that is JDK 5 compatible.
- * 
+ *
+ * <p>The heap key of each node is derived from the hash code of its key, as in
+ * {@link TreapNode#heapKey}, so maps with the same keys have the same shape however they were
+ * built, unless two keys have the same heap key.
+ *
  * @author Louis Wasserman
  */
 public final class BstMap<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
-  private static final Random RAND = new Random();
-
   final TreapNode<K, V> root;
 
   final GeneralRange<K> range;
 
+  /**
+   * The monoid under which every node keeps the summary of its subtree, if any.
+   */
+  @Nullable
+  final BstMonoid<? super K, ? super V, ?> monoid;
+
   @SuppressWarnings("rawtypes")
   public static <K extends Comparable, V> BstMap<K, V> create() {
     return create(Ordering.natural());
   }
 
   public static <K, V> BstMap<K, V> create(Comparator<? super K> comparator) {
-    return new BstMap<K, V>(null, GeneralRange.<K> all(comparator));
+    return new BstMap<K, V>(null, GeneralRange.<K> all(comparator), null);
+  }
+
+  /**
+   * Returns an empty map that keeps the summary under {@code monoid} of each of its subtrees, so
+   * that it and its views can be {@linkplain #summarize summarized} in {@code O(log n)} time.
+   */
+  public static <K, V> BstMap<K, V> create(
+      Comparator<? super K> comparator, BstMonoid<? super K, ? super V, ?> monoid) {
+    return new BstMap<K, V>(null, GeneralRange.<K> all(comparator), checkNotNull(monoid));
+  }
+
+  /**
+   * Returns a map with the same entries and comparator as {@code map}, in linear time rather than
+   * the {@code O(n log n)} of inserting the entries one at a time. If {@code map} uses the natural
+   * ordering, its keys must be mutually comparable.
+   */
+  public static <K, V> BstMap<K, V> fromSorted(SortedMap<K, ? extends V> map) {
+    return buildFromSorted(map, null);
+  }
+
+  /**
+   * Returns a map with the same entries and comparator as {@code map}, which keeps summaries under
+   * {@code monoid} as if it had been {@linkplain #create(Comparator, BstMonoid) created} with it, in
+   * linear time.
+   */
+  public static <K, V> BstMap<K, V> fromSorted(
+      SortedMap<K, ? extends V> map, BstMonoid<? super K, ? super V, ?> monoid) {
+    return buildFromSorted(map, checkNotNull(monoid));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> BstMap<K, V> buildFromSorted(
+      SortedMap<K, ? extends V> map, @Nullable BstMonoid<? super K, ? super V, ?> monoid) {
+    Comparator<? super K> comparator = map.comparator();
+    if (comparator == null) {
+      comparator = (Comparator<? super K>) Ordering.natural();
+    }
+    int n = map.size();
+    if (n == 0) {
+      return new BstMap<K, V>(null, GeneralRange.<K> all(comparator), monoid);
+    }
+    Object[] keys = new Object[n];
+    Object[] values = new Object[n];
+    int[] heapKeys = new int[n];
+    int i = 0;
+    for (Entry<K, ? extends V> entry : map.entrySet()) {
+      keys[i] = checkNotNull(entry.getKey());
+      values[i] = checkNotNull(entry.getValue());
+      heapKeys[i] = TreapNode.heapKey(keys[i]);
+      i++;
+    }
+    // Build the Cartesian tree of the heap keys with a stack holding its right spine.
+    int[] left = new int[n];
+    int[] right = new int[n];
+    int[] spine = new int[n];
+    int depth = 0;
+    for (i = 0; i < n; i++) {
+      int lastPopped = -1;
+      while (depth > 0 && heapKeys[spine[depth - 1]] > heapKeys[i]) {
+        lastPopped = spine[--depth];
+      }
+      left[i] = lastPopped;
+      right[i] = -1;
+      if (depth > 0) {
+        right[spine[depth - 1]] = i;
+      }
+      spine[depth++] = i;
+    }
+    TreapNode<K, V> root = build(spine[0], keys, values, heapKeys, left, right, monoid);
+    return new BstMap<K, V>(root, GeneralRange.<K> all(comparator), monoid);
   }
 
-  private BstMap(TreapNode<K, V> root, GeneralRange<K> range) {
+  @Nullable
+  @SuppressWarnings("unchecked")
+  private static <K, V> TreapNode<K, V> build(int i, Object[] keys, Object[] values,
+      int[] heapKeys, int[] left, int[] right,
+      @Nullable BstMonoid<? super K, ? super V, ?> monoid) {
+    if (i < 0) {
+      return null;
+    }
+    return new TreapNode<K, V>(
+        (K) keys[i],
+        (V) values[i],
+        BstMap.<K, V> build(left[i], keys, values, heapKeys, left, right, monoid),
+        BstMap.<K, V> build(right[i], keys, values, heapKeys, left, right, monoid),
+        heapKeys[i],
+        monoid);
+  }
+
+  private BstMap(TreapNode<K, V> root, GeneralRange<K> range,
+      @Nullable BstMonoid<? super K, ? super V, ?> monoid) {
     this.root = root;
     this.range = range;
+    this.monoid = monoid;
+    this.nodeFactory = TreapNode.nodeFactory(monoid);
   }
 
   private transient Set<Entry<K, V>> entrySet;
@@ -75,45 +177,17 @@ public final class BstMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
     return new AbstractSet<Entry<K, V>>() {
       @Override
       public Iterator<Entry<K, V>> iterator() {
-
-        final BstInOrderPath<TreapNode<K, V>> startingPath = BstRangeOps.furthestPath(
-            range,
-            LEFT,
-            pathFactory(),
-            root);
-        final Iterator<BstInOrderPath<TreapNode<K, V>>> pathIterator = new AbstractLinkedIterator<BstInOrderPath<TreapNode<K, V>>>(
-            startingPath) {
-          @Override
-          protected BstInOrderPath<TreapNode<K, V>> computeNext(
-              BstInOrderPath<TreapNode<K, V>> previous) {
-            if (!previous.hasNext(RIGHT)) {
-              return null;
-            }
-            BstInOrderPath<TreapNode<K, V>> next = previous.next(RIGHT);
-            return range.contains(next.getTip().getKey()) ? next : null;
-          }
-        };
-        return new Iterator<Entry<K, V>>() {
-          K toRemove = null;
+        return new UnmodifiableIterator<Entry<K, V>>() {
+          final NodeCursor cursor = new NodeCursor();
 
           @Override
           public boolean hasNext() {
-            return pathIterator.hasNext();
+            return cursor.hasNext();
           }
 
           @Override
           public Entry<K, V> next() {
-            BstInOrderPath<TreapNode<K, V>> path = pathIterator.next();
-            TreapNode<K, V> tip = path.getTip();
-            toRemove = tip.getKey();
-            return Maps.immutableEntry(tip.getKey(), tip.getValue());
-          }
-
-          @Override
-          public void remove() {
-            checkState(toRemove != null);
-            BstMap.this.remove(toRemove);
-            toRemove = null;
+            return cursor.next();
           }
         };
       }
@@ -125,6 +199,78 @@ public final class BstMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
     };
   }
 
+  /**
+   * An in-order traversal of the nodes of this map within its range. The path to the next node is
+   * kept in an array that is reused from step to step, so iterating allocates nothing per entry.
+   */
+  private final class NodeCursor {
+    private Object[] stack = new Object[16];
+    private int depth = 0;
+
+    NodeCursor() {
+      pushLeft(root);
+    }
+
+    private void pushLeft(@Nullable TreapNode<K, V> node) {
+      while (node != null) {
+        if (range.tooLow(node.getKey())) {
+          node = node.childOrNull(RIGHT);
+        } else {
+          if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, 2 * depth);
+          }
+          stack[depth++] = node;
+          node = node.childOrNull(LEFT);
+        }
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private TreapNode<K, V> top() {
+      return (TreapNode<K, V>) stack[depth - 1];
+    }
+
+    boolean hasNext() {
+      return depth > 0 && !range.tooHigh(top().getKey());
+    }
+
+    TreapNode<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      TreapNode<K, V> node = top();
+      stack[--depth] = null;
+      pushLeft(node.childOrNull(RIGHT));
+      return node;
+    }
+  }
+
+  /**
+   * Passes every entry of this map to {@code visitor}, in key order. Unlike iterating over
+   * {@link #entrySet()}, this allocates nothing.
+   */
+  public void forEach(BstEntryVisitor<? super K, ? super V> visitor) {
+    forEach(root, checkNotNull(visitor));
+  }
+
+  private void forEach(
+      @Nullable TreapNode<K, V> node,
+      BstEntryVisitor<? super K, ? super V> visitor) {
+    while (node != null) {
+      K key = node.getKey();
+      boolean tooLow = range.tooLow(key);
+      boolean tooHigh = range.tooHigh(key);
+      if (!tooLow) {
+        forEach(node.childOrNull(LEFT), visitor);
+        if (tooHigh) {
+          return;
+        }
+        visitor.visit(key, node.getValue());
+      }
+      node = node.childOrNull(RIGHT);
+    }
+  }
+
   @Override
   public V remove(@Nullable Object key) {
     throw new UnsupportedOperationException();
@@ -197,7 +343,7 @@ public final class BstMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
         mutationRule,
         root,
         key);
-    return new BstMap<K, V>(mutationResult.getChangedRoot(), range);
+    return new BstMap<K, V>(mutationResult.getChangedRoot(), range, monoid);
   }
 
   public Entry<K, V> firstEntry() {
@@ -218,10 +364,238 @@ public final class BstMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
     return tipOrNull(lastPath);
   }
 
+  /**
+   * Returns the entry with {@code index} smaller keys in this map, in {@code O(log n)} time.
+   *
+   * @throws IndexOutOfBoundsException if {@code index} is negative or not less than {@code size()}
+   */
+  public Entry<K, V> select(int index) {
+    checkElementIndex(index, size());
+    int i = index + countTooLow();
+    TreapNode<K, V> node = root;
+    while (true) {
+      int leftSize = sizeOf(node.childOrNull(LEFT));
+      if (i < leftSize) {
+        node = node.childOrNull(LEFT);
+      } else if (i == leftSize) {
+        return node;
+      } else {
+        i -= leftSize + 1;
+        node = node.childOrNull(RIGHT);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of keys in this map that are less than {@code key}, in {@code O(log n)}
+   * time. {@code key} need not be in the map.
+   */
+  public int rank(K key) {
+    checkNotNull(key);
+    if (range.tooLow(key)) {
+      return 0;
+    } else if (range.tooHigh(key)) {
+      return size();
+    }
+    Comparator<? super K> comparator = range.comparator();
+    int count = 0;
+    TreapNode<K, V> node = root;
+    while (node != null) {
+      if (comparator.compare(node.getKey(), key) < 0) {
+        count += 1 + sizeOf(node.childOrNull(LEFT));
+        node = node.childOrNull(RIGHT);
+      } else {
+        node = node.childOrNull(LEFT);
+      }
+    }
+    return count - countTooLow();
+  }
+
+  /**
+   * Returns an entry of this map chosen uniformly at random, in {@code O(log n)} time.
+   *
+   * @throws NoSuchElementException if this map is empty
+   */
+  public Entry<K, V> randomEntry(Random random) {
+    int size = size();
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return select(random.nextInt(size));
+  }
+
+  /**
+   * Splits this map into the entries with keys less than {@code key} and those with keys at least
+   * {@code key}, in {@code O(log n)} time. Unlike {@link #headMap} and {@link #tailMap}, which are
+   * views of this map, the two halves are separate trees, which can be {@linkplain #join joined}
+   * with other maps.
+   */
+  public Split<K, V> split(K key) {
+    checkNotNull(key);
+    Comparator<? super K> comparator = range.comparator();
+    return new Split<K, V>(
+        new BstMap<K, V>(below(comparator, nodeFactory, root, key), range, monoid),
+        new BstMap<K, V>(atOrAbove(comparator, nodeFactory, root, key), range, monoid));
+  }
+
+  /**
+   * Returns a map with the entries of this one, except those with keys at least {@code fromKey} and
+   * less than {@code toKey}, in {@code O(log n)} time.
+   */
+  public BstMap<K, V> deleteRange(K fromKey, K toKey) {
+    Comparator<? super K> comparator = range.comparator();
+    if (comparator.compare(checkNotNull(fromKey), checkNotNull(toKey)) >= 0) {
+      return this;
+    }
+    TreapNode<K, V> newRoot = TreapNode.<K, V> balancePolicy().combine(
+        nodeFactory,
+        below(comparator, nodeFactory, root, fromKey),
+        atOrAbove(comparator, nodeFactory, root, toKey));
+    return new BstMap<K, V>(newRoot, range, monoid);
+  }
+
+  /**
+   * Returns a map with the entries of both {@code left} and {@code right}, in {@code O(log n)}
+   * time. The maps must not be views of part of another map, must have the same comparator and
+   * monoid, and every key in {@code left} must be less than every key in {@code right}.
+   */
+  public static <K, V> BstMap<K, V> join(BstMap<K, V> left, BstMap<K, V> right) {
+    checkArgument(
+        left.range.equals(right.range) && !left.range.hasLowerBound()
+            && !left.range.hasUpperBound() && left.monoid == right.monoid,
+        "Only whole maps with the same comparator and monoid can be joined");
+    if (left.isEmpty()) {
+      return right;
+    } else if (right.isEmpty()) {
+      return left;
+    }
+    checkArgument(left.comparator().compare(left.lastKey(), right.firstKey()) < 0,
+        "Keys of the left map must be less than keys of the right map");
+    TreapNode<K, V> newRoot =
+        TreapNode.<K, V> balancePolicy().combine(left.nodeFactory, left.root, right.root);
+    return new BstMap<K, V>(newRoot, left.range, left.monoid);
+  }
+
+  @Nullable
+  private static <K, V> TreapNode<K, V> below(Comparator<? super K> comparator,
+      BstNodeFactory<TreapNode<K, V>> nodeFactory, @Nullable TreapNode<K, V> node, K key) {
+    while (node != null && comparator.compare(node.getKey(), key) >= 0) {
+      node = node.childOrNull(LEFT);
+    }
+    if (node == null) {
+      return null;
+    }
+    TreapNode<K, V> right = below(comparator, nodeFactory, node.childOrNull(RIGHT), key);
+    return (right == node.childOrNull(RIGHT))
+        ? node
+        : nodeFactory.createNode(node, node.childOrNull(LEFT), right);
+  }
+
+  @Nullable
+  private static <K, V> TreapNode<K, V> atOrAbove(Comparator<? super K> comparator,
+      BstNodeFactory<TreapNode<K, V>> nodeFactory, @Nullable TreapNode<K, V> node, K key) {
+    while (node != null && comparator.compare(node.getKey(), key) < 0) {
+      node = node.childOrNull(RIGHT);
+    }
+    if (node == null) {
+      return null;
+    }
+    TreapNode<K, V> left = atOrAbove(comparator, nodeFactory, node.childOrNull(LEFT), key);
+    return (left == node.childOrNull(LEFT))
+        ? node
+        : nodeFactory.createNode(node, left, node.childOrNull(RIGHT));
+  }
+
+  /**
+   * The two halves of a map split at a key, from {@link BstMap#split}.
+   */
+  public static final class Split<K, V> {
+    private final BstMap<K, V> below;
+    private final BstMap<K, V> atOrAbove;
+
+    private Split(BstMap<K, V> below, BstMap<K, V> atOrAbove) {
+      this.below = below;
+      this.atOrAbove = atOrAbove;
+    }
+
+    /**
+     * Returns the entries with keys less than the split key.
+     */
+    public BstMap<K, V> getBelow() {
+      return below;
+    }
+
+    /**
+     * Returns the entries with keys at least the split key.
+     */
+    public BstMap<K, V> getAtOrAbove() {
+      return atOrAbove;
+    }
+  }
+
+  /**
+   * Returns the summary under {@code monoid} of the entries of this map, in {@code O(log n)} time.
+   * Summaries of ranges of keys can be found with views such as {@link #subMap(Object, Object)}.
+   *
+   * @throws IllegalArgumentException if this map was not created with {@code monoid}
+   */
+  public <S> S summarize(BstMonoid<? super K, ? super V, S> monoid) {
+    checkArgument(monoid == this.monoid, "This map does not keep summaries under %s", monoid);
+    return summarize(monoid, root, range.hasLowerBound(), range.hasUpperBound());
+  }
+
+  /**
+   * Returns the summary of the entries of the subtree at {@code node} that are in this map's range,
+   * only checking the bounds flagged: once the walk has passed a key in the range, the subtrees on
+   * the far side of it are below the upper or above the lower bound, so each bound is only checked
+   * down a single path.
+   */
+  @SuppressWarnings("unchecked")
+  private <S> S summarize(BstMonoid<? super K, ? super V, S> monoid,
+      @Nullable TreapNode<K, V> node, boolean checkLow, boolean checkHigh) {
+    if (node == null) {
+      return monoid.identity();
+    } else if (!checkLow && !checkHigh) {
+      return (S) node.summary;
+    }
+    K key = node.getKey();
+    if (checkLow && range.tooLow(key)) {
+      return summarize(monoid, node.childOrNull(RIGHT), checkLow, checkHigh);
+    } else if (checkHigh && range.tooHigh(key)) {
+      return summarize(monoid, node.childOrNull(LEFT), checkLow, checkHigh);
+    }
+    S result = monoid.combine(
+        summarize(monoid, node.childOrNull(LEFT), checkLow, false),
+        monoid.summarize(key, node.getValue()));
+    return monoid.combine(result, summarize(monoid, node.childOrNull(RIGHT), false, checkHigh));
+  }
+
+  /**
+   * Returns the number of nodes in the tree that are below this map's range.
+   */
+  private int countTooLow() {
+    if (!range.hasLowerBound()) {
+      return 0;
+    }
+    int count = 0;
+    TreapNode<K, V> node = root;
+    while (node != null) {
+      if (range.tooLow(node.getKey())) {
+        count += 1 + sizeOf(node.childOrNull(LEFT));
+        node = node.childOrNull(RIGHT);
+      } else {
+        node = node.childOrNull(LEFT);
+      }
+    }
+    return count;
+  }
+
+  private static int sizeOf(@Nullable TreapNode<?, ?> node) {
+    return (node == null) ? 0 : node.size;
+  }
+
   private static <K, V> Entry<K, V> tipOrNull(BstInOrderPath<TreapNode<K, V>> path) {
-    return (path == null) ? null : Maps.immutableEntry(path.getTip().getKey(), path
-        .getTip()
-        .getValue());
+    return (path == null) ? null : path.getTip();
   }
 
   @Override
@@ -230,17 +604,17 @@ public final class BstMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
   }
 
   @Override
-  public SortedMap<K, V> subMap(K fromKey, K toKey) {
+  public BstMap<K, V> subMap(K fromKey, K toKey) {
     return subMap(fromKey, true, toKey, false);
   }
 
   @Override
-  public SortedMap<K, V> headMap(K toKey) {
+  public BstMap<K, V> headMap(K toKey) {
     return headMap(toKey, false);
   }
 
   @Override
-  public SortedMap<K, V> tailMap(K fromKey) {
+  public BstMap<K, V> tailMap(K fromKey) {
     return tailMap(fromKey, true);
   }
 
@@ -265,7 +639,7 @@ public final class BstMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
     return new BstMap<K, V>(root, range.intersect(GeneralRange.upTo(
         comparator(),
         checkNotNull(toKey),
-        boundType(inclusive))));
+        boundType(inclusive))), monoid);
   }
 
   public BstMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
@@ -274,14 +648,14 @@ public final class BstMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
         checkNotNull(fromKey),
         boundType(fromInclusive),
         checkNotNull(toKey),
-        boundType(toInclusive))));
+        boundType(toInclusive))), monoid);
   }
 
   public BstMap<K, V> tailMap(K toKey, boolean inclusive) {
     return new BstMap<K, V>(root, range.intersect(GeneralRange.downTo(
         comparator(),
         checkNotNull(toKey),
-        boundType(inclusive))));
+        boundType(inclusive))), monoid);
   }
 
   public Entry<K, V> ceilingEntry(K key) {
@@ -300,6 +674,138 @@ public final class BstMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
     return headMap(key, false).lastEntry();
   }
 
+  /**
+   * Reports every difference between this map and {@code other} to {@code visitor}, in key order,
+   * treating this map as the earlier of the two.
+   *
+   * <p>The two trees are walked in parallel, and any subtree the two maps share is skipped without
+   * being visited, so if {@code other} was derived from this map by a few insertions and deletions
+   * (or vice versa), this takes time proportional to the number of changes times the height of the
+   * trees, rather than to the size of the maps.
+   */
+  public void diff(BstMap<K, V> other, BstDiffVisitor<? super K, ? super V> visitor) {
+    checkNotNull(visitor);
+    Comparator<? super K> comparator = comparator();
+    GeneralRange<K> otherRange = other.range;
+    // shared subtrees can only be skipped if both maps see all of them
+    boolean sameRange = range.equals(otherRange);
+    DiffCursor<K, V> before = new DiffCursor<K, V>(root);
+    DiffCursor<K, V> after = new DiffCursor<K, V>(other.root);
+    while (!before.isEmpty() && !after.isEmpty()) {
+      TreapNode<K, V> x = before.top();
+      TreapNode<K, V> y = after.top();
+      if (!before.isTopExpanded() && !after.isTopExpanded()) {
+        if (x == y && sameRange) {
+          before.skip();
+          after.skip();
+        } else if (x.size >= y.size) {
+          before.expand();
+        } else {
+          after.expand();
+        }
+      } else if (!before.isTopExpanded()) {
+        before.expand();
+      } else if (!after.isTopExpanded()) {
+        after.expand();
+      } else {
+        int cmp = comparator.compare(x.getKey(), y.getKey());
+        if (cmp < 0) {
+          before.pop();
+          if (range.contains(x.getKey())) {
+            visitor.removed(x.getKey(), x.getValue());
+          }
+        } else if (cmp > 0) {
+          after.pop();
+          if (otherRange.contains(y.getKey())) {
+            visitor.added(y.getKey(), y.getValue());
+          }
+        } else {
+          before.pop();
+          after.pop();
+          boolean inBefore = range.contains(x.getKey());
+          boolean inAfter = otherRange.contains(y.getKey());
+          if (inBefore && inAfter) {
+            if (x != y && !Objects.equal(x.getValue(), y.getValue())) {
+              visitor.changed(x.getKey(), x.getValue(), y.getValue());
+            }
+          } else if (inBefore) {
+            visitor.removed(x.getKey(), x.getValue());
+          } else if (inAfter) {
+            visitor.added(y.getKey(), y.getValue());
+          }
+        }
+      }
+    }
+    while (!before.isEmpty()) {
+      if (before.isTopExpanded()) {
+        TreapNode<K, V> x = before.pop();
+        if (range.contains(x.getKey())) {
+          visitor.removed(x.getKey(), x.getValue());
+        }
+      } else {
+        before.expand();
+      }
+    }
+    while (!after.isEmpty()) {
+      if (after.isTopExpanded()) {
+        TreapNode<K, V> y = after.pop();
+        if (otherRange.contains(y.getKey())) {
+          visitor.added(y.getKey(), y.getValue());
+        }
+      } else {
+        after.expand();
+      }
+    }
+  }
+
+  /**
+   * The remaining part of an in-order traversal of a tree, as a stack. An unexpanded entry stands
+   * for its whole subtree; an expanded entry stands for its node followed by its right subtree,
+   * its left subtree having been pushed above it.
+   */
+  private static final class DiffCursor<K, V> {
+    private final List<TreapNode<K, V>> nodes = Lists.newArrayList();
+    private final BitSet expanded = new BitSet();
+
+    DiffCursor(@Nullable TreapNode<K, V> root) {
+      push(root);
+    }
+
+    private void push(@Nullable TreapNode<K, V> subtree) {
+      if (subtree != null) {
+        expanded.clear(nodes.size());
+        nodes.add(subtree);
+      }
+    }
+
+    boolean isEmpty() {
+      return nodes.isEmpty();
+    }
+
+    TreapNode<K, V> top() {
+      return nodes.get(nodes.size() - 1);
+    }
+
+    boolean isTopExpanded() {
+      return expanded.get(nodes.size() - 1);
+    }
+
+    void expand() {
+      expanded.set(nodes.size() - 1);
+      push(top().childOrNull(LEFT));
+    }
+
+    void skip() {
+      nodes.remove(nodes.size() - 1);
+    }
+
+    TreapNode<K, V> pop() {
+      TreapNode<K, V> node = nodes.remove(nodes.size() - 1);
+      push(node.childOrNull(RIGHT));
+      return node;
+    }
+  }
+
   private static BoundType boundType(boolean inclusive) {
     return inclusive ? BoundType.CLOSED : BoundType.OPEN;
   }
@@ -317,7 +823,7 @@ public final class BstMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
         @Nullable TreapNode<K, V> originalEntry) {
       if (originalEntry == null) {
         return BstModificationResult.rebalancingChange(null, new TreapNode<K, V>(key, newValue,
-            null, null, RAND.nextInt()));
+            null, null, TreapNode.heapKey(key)));
       } else {
         return BstModificationResult.rebuildingChange(originalEntry, new TreapNode<K, V>(key,
             newValue, null, null, originalEntry.heapKey));
@@ -346,7 +852,7 @@ public final class BstMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
     return BstInOrderPath.inOrderFactory();
   }
 
-  private transient final BstNodeFactory<TreapNode<K, V>> nodeFactory = TreapNode.nodeFactory();
+  private transient final BstNodeFactory<TreapNode<K, V>> nodeFactory;
 
   private transient final BstAggregate<TreapNode<K, V>> countAggregate = new BstAggregate<TreapNode<K, V>>() {
     @Override
@@ -0,0 +1,29 @@
+package org.learningu.scheduling.util.bst;
+
+/**
+ * A summary of runs of entries in a {@link BstMap}, such as a sum or a minimum over their values.
+ * A map created with a monoid keeps the summary of every subtree in its root node, so that
+ * {@link BstMap#summarize} can summarize any range of the map in {@code O(log n)} time.
+ *
+ * <p>{@link #combine} must be associative, and {@link #identity} must be an identity for it. They
+ * need not be commutative; summaries are always combined in key order.
+ *
+ * @author lowasser
+ */
+public interface BstMonoid<K, V, S> {
+  /**
+   * Returns the summary of no entries.
+   */
+  S identity();
+
+  /**
+   * Returns the summary of a single entry.
+   */
+  S summarize(K key, V value);
+
+  /**
+   * Returns the summary of the entries summarized by {@code left}, followed by those summarized by
+   * {@code right}.
+   */
+  S combine(S left, S right);
+}
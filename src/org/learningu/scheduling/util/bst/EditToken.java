@@ -0,0 +1,13 @@
+package org.learningu.scheduling.util.bst;
+
+/**
+ * Identifies a batch of edits to a persistent treap or array, as in {@link IntBstMap#insert(int,
+ * Object, EditToken)} or {@link org.learningu.scheduling.util.PersistentIntArray#with(int, int,
+ * EditToken)}. Nodes created by an edit with a token may be modified in place by later edits with
+ * the same token, instead of being copied. So once a version of a map produced with a token is
+ * shared or kept, for instance as a rollback point, that token must not be used again.
+ *
+ * @author lowasser
+ */
+public final class EditToken {
+}
@@ -0,0 +1,10 @@
+package org.learningu.scheduling.util.bst;
+
+/**
+ * Receives the entries of an {@link IntBstMap} from {@link IntBstMap#forEach}, in key order.
+ *
+ * @author lowasser
+ */
+public interface IntBstEntryVisitor<V> {
+  void visit(int key, V value);
+}
@@ -0,0 +1,725 @@
+package org.learningu.scheduling.util.bst;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.UnmodifiableIterator;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable sorted map from primitive {@code int} keys to values, implemented as a persistent
+ * treap. This is meant for maps keyed by dense ordinals of program objects, where {@link BstMap}
+ * would compare the objects themselves on every step of every lookup. Updates return a new map
+ * that shares all but {@code O(log n)} of its nodes with the original.
+ *
+ * <p>The heap key of each node is a fixed mix of its key, so the shape of the tree depends only on
+ * the set of keys, not on the order in which they were inserted. Equal key sets built
+ * independently therefore give identically shaped trees.
+ *
+ * @author lowasser
+ */
+public final class IntBstMap<V> {
+  private static final IntBstMap<Object> EMPTY = new IntBstMap<Object>(null);
+
+  @SuppressWarnings("unchecked")
+  public static <V> IntBstMap<V> create() {
+    return (IntBstMap<V>) EMPTY;
+  }
+
+  /**
+   * Returns a map from each of {@code keys} to the value at the same index of {@code values}, in
+   * linear time. The keys must be strictly increasing.
+   */
+  public static <V> IntBstMap<V> fromSorted(int[] keys, List<? extends V> values) {
+    int n = keys.length;
+    checkArgument(n == values.size(), "%s keys but %s values", n, values.size());
+    if (n == 0) {
+      return create();
+    }
+    // Build the Cartesian tree of the heap keys with a stack holding its right spine.
+    int[] heapKeys = new int[n];
+    int[] left = new int[n];
+    int[] right = new int[n];
+    int[] spine = new int[n];
+    int depth = 0;
+    for (int i = 0; i < n; i++) {
+      checkArgument(i == 0 || keys[i - 1] < keys[i], "Keys are not strictly increasing");
+      heapKeys[i] = heapKey(keys[i]);
+      int lastPopped = -1;
+      while (depth > 0 && heapKeys[spine[depth - 1]] < heapKeys[i]) {
+        lastPopped = spine[--depth];
+      }
+      left[i] = lastPopped;
+      right[i] = -1;
+      if (depth > 0) {
+        right[spine[depth - 1]] = i;
+      }
+      spine[depth++] = i;
+    }
+    return new IntBstMap<V>(build(spine[0], keys, values, heapKeys, left, right));
+  }
+
+  @Nullable
+  private static <V> IntTreapNode<V> build(int i, int[] keys, List<? extends V> values,
+      int[] heapKeys, int[] left, int[] right) {
+    if (i < 0) {
+      return null;
+    }
+    return new IntTreapNode<V>(
+        keys[i],
+        checkNotNull(values.get(i)),
+        IntBstMap.<V> build(left[i], keys, values, heapKeys, left, right),
+        IntBstMap.<V> build(right[i], keys, values, heapKeys, left, right),
+        heapKeys[i]);
+  }
+
+  /**
+   * The heap key for {@code key}, from the MurmurHash3 finalizer. This is a bijection, so distinct
+   * keys never tie.
+   */
+  static int heapKey(int key) {
+    key ^= key >>> 16;
+    key *= 0x85ebca6b;
+    key ^= key >>> 13;
+    key *= 0xc2b2ae35;
+    key ^= key >>> 16;
+    return key;
+  }
+
+  @Nullable
+  final IntTreapNode<V> root;
+
+  private IntBstMap(@Nullable IntTreapNode<V> root) {
+    this.root = root;
+  }
+
+  private IntBstMap<V> withRoot(@Nullable IntTreapNode<V> newRoot) {
+    if (newRoot == root) {
+      return this;
+    }
+    return (newRoot == null) ? IntBstMap.<V> create() : new IntBstMap<V>(newRoot);
+  }
+
+  public int size() {
+    return IntTreapNode.size(root);
+  }
+
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  @Nullable
+  public IntTreapNode<V> getEntry(int key) {
+    return getEntry(root, key);
+  }
+
+  @Nullable
+  private static <V> IntTreapNode<V> getEntry(@Nullable IntTreapNode<V> node, int key) {
+    while (node != null) {
+      if (key < node.key) {
+        node = node.left;
+      } else if (key > node.key) {
+        node = node.right;
+      } else {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  public V get(int key) {
+    IntTreapNode<V> node = getEntry(key);
+    return (node == null) ? null : node.getValue();
+  }
+
+  public boolean containsKey(int key) {
+    return getEntry(key) != null;
+  }
+
+  /**
+   * Returns a map with the same entries as this one, except that {@code key} maps to
+   * {@code value}. Returns this map if {@code key} is already mapped to that same object.
+   */
+  public IntBstMap<V> insert(int key, V value) {
+    return insert(key, value, null);
+  }
+
+  /**
+   * Like {@link #insert(int, Object)}, except that nodes created by earlier edits with
+   * {@code owner} may be modified in place rather than copied, so that a series of edits only
+   * allocates the nodes it needs once. Any map produced by an edit with {@code owner} may be
+   * changed by later edits with it, so none should be kept or shared while {@code owner} is still
+   * in use. If {@code owner} is {@code null}, this is the same as {@code insert(key, value)}.
+   */
+  public IntBstMap<V> insert(int key, V value, @Nullable EditToken owner) {
+    checkNotNull(value);
+    return withRoot(insert(root, key, value, owner));
+  }
+
+  private static <V> IntTreapNode<V> insert(
+      @Nullable IntTreapNode<V> node, int key, V value, @Nullable EditToken owner) {
+    if (node == null) {
+      return new IntTreapNode<V>(key, value, null, null, heapKey(key), owner);
+    } else if (key < node.key) {
+      IntTreapNode<V> left = insert(node.left, key, value, owner);
+      if (left == node.left && !IntTreapNode.isOwnedBy(left, owner)) {
+        return node;
+      } else if (left.heapKey > node.heapKey) {
+        // rotate right
+        IntTreapNode<V> newRight =
+            node.editable(owner).set(node.getValue(), left.right, node.right);
+        return left.editable(owner).set(left.getValue(), left.left, newRight);
+      }
+      return node.editable(owner).set(node.getValue(), left, node.right);
+    } else if (key > node.key) {
+      IntTreapNode<V> right = insert(node.right, key, value, owner);
+      if (right == node.right && !IntTreapNode.isOwnedBy(right, owner)) {
+        return node;
+      } else if (right.heapKey > node.heapKey) {
+        // rotate left
+        IntTreapNode<V> newLeft = node.editable(owner).set(node.getValue(), node.left, right.left);
+        return right.editable(owner).set(right.getValue(), newLeft, right.right);
+      }
+      return node.editable(owner).set(node.getValue(), node.left, right);
+    } else if (node.getValue() == value) {
+      return node;
+    } else {
+      return node.editable(owner).set(value, node.left, node.right);
+    }
+  }
+
+  /**
+   * Returns a map with the same entries as this one, except that {@code key} is not mapped.
+   * Returns this map if {@code key} is not mapped already.
+   */
+  public IntBstMap<V> delete(int key) {
+    return delete(key, null);
+  }
+
+  /**
+   * Like {@link #delete(int)}, except that nodes created by earlier edits with {@code owner} may be
+   * modified in place, as in {@link #insert(int, Object, EditToken)}.
+   */
+  public IntBstMap<V> delete(int key, @Nullable EditToken owner) {
+    return withRoot(delete(root, key, owner));
+  }
+
+  @Nullable
+  private static <V> IntTreapNode<V> delete(
+      @Nullable IntTreapNode<V> node, int key, @Nullable EditToken owner) {
+    if (node == null) {
+      return null;
+    } else if (key < node.key) {
+      IntTreapNode<V> left = delete(node.left, key, owner);
+      return (left == node.left && !IntTreapNode.isOwnedBy(left, owner))
+          ? node
+          : node.editable(owner).set(node.getValue(), left, node.right);
+    } else if (key > node.key) {
+      IntTreapNode<V> right = delete(node.right, key, owner);
+      return (right == node.right && !IntTreapNode.isOwnedBy(right, owner))
+          ? node
+          : node.editable(owner).set(node.getValue(), node.left, right);
+    } else {
+      return merge(node.left, node.right, owner);
+    }
+  }
+
+  /**
+   * Merges two treaps, where every key in {@code left} is less than every key in {@code right}.
+   */
+  @Nullable
+  private static <V> IntTreapNode<V> merge(@Nullable IntTreapNode<V> left,
+      @Nullable IntTreapNode<V> right, @Nullable EditToken owner) {
+    if (left == null) {
+      return right;
+    } else if (right == null) {
+      return left;
+    } else if (left.heapKey > right.heapKey) {
+      return left.editable(owner).set(left.getValue(), left.left, merge(left.right, right, owner));
+    } else {
+      return right.editable(owner).set(right.getValue(), merge(left, right.left, owner),
+          right.right);
+    }
+  }
+
+  /**
+   * Returns a map with the entries of this one whose keys are less than {@code toKey}, in
+   * {@code O(log n)} time.
+   */
+  public IntBstMap<V> headMap(int toKey) {
+    return withRoot(headMap(root, toKey));
+  }
+
+  /**
+   * Returns a map with the entries of this one whose keys are at least {@code fromKey}, in
+   * {@code O(log n)} time.
+   */
+  public IntBstMap<V> tailMap(int fromKey) {
+    return withRoot(tailMap(root, fromKey));
+  }
+
+  /**
+   * Splits this map into the entries with keys less than {@code key} and those with keys at least
+   * {@code key}, in {@code O(log n)} time.
+   */
+  public Split<V> split(int key) {
+    return new Split<V>(headMap(key), tailMap(key));
+  }
+
+  /**
+   * Returns a map with the entries of this one, except those with keys {@code k} such that
+   * {@code fromKey <= k < toKey}, in {@code O(log n)} time.
+   */
+  public IntBstMap<V> deleteRange(int fromKey, int toKey) {
+    if (fromKey >= toKey) {
+      return this;
+    }
+    return withRoot(merge(headMap(root, fromKey), tailMap(root, toKey), null));
+  }
+
+  /**
+   * Returns a map with the entries of both {@code left} and {@code right}, in {@code O(log n)}
+   * time. Every key in {@code left} must be less than every key in {@code right}.
+   */
+  public static <V> IntBstMap<V> join(IntBstMap<V> left, IntBstMap<V> right) {
+    if (left.isEmpty()) {
+      return right;
+    } else if (right.isEmpty()) {
+      return left;
+    }
+    checkArgument(left.lastEntry().key < right.firstEntry().key,
+        "Keys of the left map must be less than keys of the right map");
+    return new IntBstMap<V>(merge(left.root, right.root, null));
+  }
+
+  @Nullable
+  private static <V> IntTreapNode<V> headMap(@Nullable IntTreapNode<V> node, int toKey) {
+    while (node != null && node.key >= toKey) {
+      node = node.left;
+    }
+    if (node == null) {
+      return null;
+    }
+    IntTreapNode<V> right = headMap(node.right, toKey);
+    return (right == node.right)
+        ? node
+        : new IntTreapNode<V>(node.key, node.getValue(), node.left, right, node.heapKey);
+  }
+
+  @Nullable
+  private static <V> IntTreapNode<V> tailMap(@Nullable IntTreapNode<V> node, int fromKey) {
+    while (node != null && node.key < fromKey) {
+      node = node.right;
+    }
+    if (node == null) {
+      return null;
+    }
+    IntTreapNode<V> left = tailMap(node.left, fromKey);
+    return (left == node.left)
+        ? node
+        : new IntTreapNode<V>(node.key, node.getValue(), left, node.right, node.heapKey);
+  }
+
+  /**
+   * The two halves of a map split at a key, from {@link IntBstMap#split}.
+   */
+  public static final class Split<V> {
+    private final IntBstMap<V> below;
+    private final IntBstMap<V> atOrAbove;
+
+    private Split(IntBstMap<V> below, IntBstMap<V> atOrAbove) {
+      this.below = below;
+      this.atOrAbove = atOrAbove;
+    }
+
+    /**
+     * Returns the entries with keys less than the split key.
+     */
+    public IntBstMap<V> getBelow() {
+      return below;
+    }
+
+    /**
+     * Returns the entries with keys at least the split key.
+     */
+    public IntBstMap<V> getAtOrAbove() {
+      return atOrAbove;
+    }
+  }
+
+  /**
+   * Returns a mutable version of this map, for making a series of changes without allocating
+   * every intermediate version. This map itself is not affected.
+   */
+  public Transient<V> asTransient() {
+    return new Transient<V>(root);
+  }
+
+  /**
+   * A mutable map backed by a treap whose nodes are shared with the {@link IntBstMap} it came
+   * from. Nodes are copied the first time a change reaches them and modified in place after that.
+   * Once {@link #persistent()} has been called, the transient may no longer be used.
+   */
+  public static final class Transient<V> {
+    @Nullable
+    private EditToken owner = new EditToken();
+
+    @Nullable
+    private IntTreapNode<V> root;
+
+    private Transient(@Nullable IntTreapNode<V> root) {
+      this.root = root;
+    }
+
+    private EditToken owner() {
+      checkState(owner != null, "Transient used after persistent()");
+      return owner;
+    }
+
+    public int size() {
+      owner();
+      return IntTreapNode.size(root);
+    }
+
+    @Nullable
+    public V get(int key) {
+      owner();
+      IntTreapNode<V> node = getEntry(root, key);
+      return (node == null) ? null : node.getValue();
+    }
+
+    public Transient<V> insert(int key, V value) {
+      checkNotNull(value);
+      root = IntBstMap.insert(root, key, value, owner());
+      return this;
+    }
+
+    public Transient<V> delete(int key) {
+      root = IntBstMap.delete(root, key, owner());
+      return this;
+    }
+
+    /**
+     * Returns an immutable map with the current contents of this transient, which may not be used
+     * afterwards.
+     */
+    public IntBstMap<V> persistent() {
+      owner();
+      owner = null;
+      return (root == null) ? IntBstMap.<V> create() : new IntBstMap<V>(root);
+    }
+  }
+
+  @Nullable
+  public IntTreapNode<V> firstEntry() {
+    IntTreapNode<V> node = root;
+    if (node != null) {
+      while (node.left != null) {
+        node = node.left;
+      }
+    }
+    return node;
+  }
+
+  @Nullable
+  public IntTreapNode<V> lastEntry() {
+    IntTreapNode<V> node = root;
+    if (node != null) {
+      while (node.right != null) {
+        node = node.right;
+      }
+    }
+    return node;
+  }
+
+  /**
+   * Returns the entry with the greatest key less than or equal to {@code key}, or {@code null} if
+   * there is none.
+   */
+  @Nullable
+  public IntTreapNode<V> floorEntry(int key) {
+    IntTreapNode<V> best = null;
+    IntTreapNode<V> node = root;
+    while (node != null) {
+      if (key < node.key) {
+        node = node.left;
+      } else if (key > node.key) {
+        best = node;
+        node = node.right;
+      } else {
+        return node;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns the entry with the least key greater than or equal to {@code key}, or {@code null} if
+   * there is none.
+   */
+  @Nullable
+  public IntTreapNode<V> ceilingEntry(int key) {
+    IntTreapNode<V> best = null;
+    IntTreapNode<V> node = root;
+    while (node != null) {
+      if (key > node.key) {
+        node = node.right;
+      } else if (key < node.key) {
+        best = node;
+        node = node.left;
+      } else {
+        return node;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns the number of keys {@code k} with {@code fromKey <= k < toKey}.
+   */
+  public int countInRange(int fromKey, int toKey) {
+    return (fromKey >= toKey) ? 0 : rank(toKey) - rank(fromKey);
+  }
+
+  /**
+   * Returns the number of keys in this map that are less than {@code key}, which need not be in the
+   * map.
+   */
+  public int rank(int key) {
+    int count = 0;
+    IntTreapNode<V> node = root;
+    while (node != null) {
+      if (key <= node.key) {
+        node = node.left;
+      } else {
+        count += 1 + IntTreapNode.size(node.left);
+        node = node.right;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the entry with {@code index} smaller keys in this map, in {@code O(log n)} time.
+   *
+   * @throws IndexOutOfBoundsException if {@code index} is negative or not less than {@code size()}
+   */
+  public IntTreapNode<V> select(int index) {
+    checkElementIndex(index, size());
+    IntTreapNode<V> node = root;
+    while (true) {
+      int leftSize = IntTreapNode.size(node.left);
+      if (index < leftSize) {
+        node = node.left;
+      } else if (index == leftSize) {
+        return node;
+      } else {
+        index -= leftSize + 1;
+        node = node.right;
+      }
+    }
+  }
+
+  /**
+   * Returns an entry of this map chosen uniformly at random, in {@code O(log n)} time.
+   *
+   * @throws NoSuchElementException if this map is empty
+   */
+  public IntTreapNode<V> randomEntry(Random random) {
+    if (root == null) {
+      throw new NoSuchElementException();
+    }
+    return select(random.nextInt(root.size));
+  }
+
+  /**
+   * Returns an iterator over the entries of this map in increasing key order. The path to the next
+   * entry is kept in an array that is reused from step to step, so iterating allocates nothing per
+   * entry.
+   */
+  public Iterator<IntTreapNode<V>> entryIterator() {
+    return new EntryIterator<V>(root);
+  }
+
+  private static final class EntryIterator<V> extends UnmodifiableIterator<IntTreapNode<V>> {
+    private Object[] stack = new Object[16];
+    private int depth = 0;
+
+    EntryIterator(@Nullable IntTreapNode<V> root) {
+      pushLeft(root);
+    }
+
+    private void pushLeft(@Nullable IntTreapNode<V> node) {
+      for (; node != null; node = node.left) {
+        if (depth == stack.length) {
+          stack = Arrays.copyOf(stack, 2 * depth);
+        }
+        stack[depth++] = node;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return depth > 0;
+    }
+
+    @Override
+    public IntTreapNode<V> next() {
+      if (depth == 0) {
+        throw new NoSuchElementException();
+      }
+      @SuppressWarnings("unchecked")
+      IntTreapNode<V> node = (IntTreapNode<V>) stack[--depth];
+      stack[depth] = null;
+      pushLeft(node.right);
+      return node;
+    }
+  }
+
+  /**
+   * Passes every entry of this map to {@code visitor}, in key order. Unlike
+   * {@link #entryIterator()}, this allocates nothing at all.
+   */
+  public void forEach(IntBstEntryVisitor<? super V> visitor) {
+    forEach(root, checkNotNull(visitor));
+  }
+
+  private static <V> void forEach(
+      @Nullable IntTreapNode<V> node,
+      IntBstEntryVisitor<? super V> visitor) {
+    for (; node != null; node = node.right) {
+      forEach(node.left, visitor);
+      visitor.visit(node.key, node.getValue());
+    }
+  }
+
+  /**
+   * Reports every difference between this map and {@code other} to {@code visitor}, in key order,
+   * treating this map as the earlier of the two. Like {@link BstMap#diff}, this skips subtrees the
+   * two maps share, so for maps derived from one another it takes time roughly proportional to the
+   * number of differences.
+   */
+  public void diff(IntBstMap<V> other, BstDiffVisitor<Integer, ? super V> visitor) {
+    checkNotNull(visitor);
+    DiffCursor<V> before = new DiffCursor<V>(root);
+    DiffCursor<V> after = new DiffCursor<V>(other.root);
+    while (!before.isEmpty() && !after.isEmpty()) {
+      IntTreapNode<V> x = before.top();
+      IntTreapNode<V> y = after.top();
+      if (!before.isTopExpanded() && !after.isTopExpanded()) {
+        if (x == y) {
+          before.skip();
+          after.skip();
+        } else if (x.size >= y.size) {
+          before.expand();
+        } else {
+          after.expand();
+        }
+      } else if (!before.isTopExpanded()) {
+        before.expand();
+      } else if (!after.isTopExpanded()) {
+        after.expand();
+      } else if (x.key < y.key) {
+        before.pop();
+        visitor.removed(x.key, x.getValue());
+      } else if (x.key > y.key) {
+        after.pop();
+        visitor.added(y.key, y.getValue());
+      } else {
+        before.pop();
+        after.pop();
+        if (x != y && !Objects.equal(x.getValue(), y.getValue())) {
+          visitor.changed(x.key, x.getValue(), y.getValue());
+        }
+      }
+    }
+    while (!before.isEmpty()) {
+      if (before.isTopExpanded()) {
+        IntTreapNode<V> x = before.pop();
+        visitor.removed(x.key, x.getValue());
+      } else {
+        before.expand();
+      }
+    }
+    while (!after.isEmpty()) {
+      if (after.isTopExpanded()) {
+        IntTreapNode<V> y = after.pop();
+        visitor.added(y.key, y.getValue());
+      } else {
+        after.expand();
+      }
+    }
+  }
+
+  /**
+   * The remaining part of an in-order traversal, as in {@link BstMap#diff}.
+   */
+  private static final class DiffCursor<V> {
+    private final List<IntTreapNode<V>> nodes = Lists.newArrayList();
+    private final BitSet expanded = new BitSet();
+
+    DiffCursor(@Nullable IntTreapNode<V> root) {
+      push(root);
+    }
+
+    private void push(@Nullable IntTreapNode<V> subtree) {
+      if (subtree != null) {
+        expanded.clear(nodes.size());
+        nodes.add(subtree);
+      }
+    }
+
+    boolean isEmpty() {
+      return nodes.isEmpty();
+    }
+
+    IntTreapNode<V> top() {
+      return nodes.get(nodes.size() - 1);
+    }
+
+    boolean isTopExpanded() {
+      return expanded.get(nodes.size() - 1);
+    }
+
+    void expand() {
+      expanded.set(nodes.size() - 1);
+      push(top().left);
+    }
+
+    void skip() {
+      nodes.remove(nodes.size() - 1);
+    }
+
+    IntTreapNode<V> pop() {
+      IntTreapNode<V> node = nodes.remove(nodes.size() - 1);
+      push(node.right);
+      return node;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("{");
+    Iterator<IntTreapNode<V>> iterator = entryIterator();
+    while (iterator.hasNext()) {
+      builder.append(iterator.next());
+      if (iterator.hasNext()) {
+        builder.append(", ");
+      }
+    }
+    return builder.append('}').toString();
+  }
+}
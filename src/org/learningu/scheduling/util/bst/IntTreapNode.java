@@ -0,0 +1,94 @@
+package org.learningu.scheduling.util.bst;
+
+import javax.annotation.Nullable;
+
+/**
+ * A node in an {@link IntBstMap}: a treap node with a primitive {@code int} key. Nodes are
+ * effectively immutable, except that a node created by an edit with an {@link EditToken} may be
+ * modified by later edits with the same token.
+ *
+ * @author lowasser
+ */
+public final class IntTreapNode<V> {
+  final int key;
+
+  final int heapKey;
+
+  @Nullable
+  private final EditToken owner;
+
+  private V value;
+
+  @Nullable
+  IntTreapNode<V> left;
+
+  @Nullable
+  IntTreapNode<V> right;
+
+  int size;
+
+  IntTreapNode(
+      int key,
+      V value,
+      @Nullable IntTreapNode<V> left,
+      @Nullable IntTreapNode<V> right,
+      int heapKey) {
+    this(key, value, left, right, heapKey, null);
+  }
+
+  IntTreapNode(
+      int key,
+      V value,
+      @Nullable IntTreapNode<V> left,
+      @Nullable IntTreapNode<V> right,
+      int heapKey,
+      @Nullable EditToken owner) {
+    this.key = key;
+    this.heapKey = heapKey;
+    this.owner = owner;
+    set(value, left, right);
+  }
+
+  static int size(@Nullable IntTreapNode<?> node) {
+    return (node == null) ? 0 : node.size;
+  }
+
+  /**
+   * Returns whether {@code node} was created by an edit with {@code owner}, and so may be modified
+   * in place by other edits with it.
+   */
+  static boolean isOwnedBy(@Nullable IntTreapNode<?> node, @Nullable EditToken owner) {
+    return owner != null && node != null && node.owner == owner;
+  }
+
+  /**
+   * Returns this node, if it may be modified by an edit with {@code owner}, or otherwise a copy of
+   * it that may.
+   */
+  IntTreapNode<V> editable(@Nullable EditToken owner) {
+    return isOwnedBy(this, owner)
+        ? this
+        : new IntTreapNode<V>(key, value, left, right, heapKey, owner);
+  }
+
+  IntTreapNode<V> set(V value, @Nullable IntTreapNode<V> left, @Nullable IntTreapNode<V> right) {
+    this.value = value;
+    this.left = left;
+    this.right = right;
+    this.size = 1 + size(left) + size(right);
+    return this;
+  }
+
+  public int getKey() {
+    return key;
+  }
+
+  public V getValue() {
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return key + "=" + value;
+  }
+}
@@ -3,36 +3,134 @@ package org.learningu.scheduling.util.bst;
 import static org.learningu.scheduling.util.bst.BstSide.LEFT;
 import static org.learningu.scheduling.util.bst.BstSide.RIGHT;
 
+import com.google.common.base.Objects;
+
+import java.util.Map.Entry;
+
 import javax.annotation.Nullable;
 
-public final class TreapNode<K, V> extends BstNode<K, TreapNode<K, V>> {
+/**
+ * A node in a {@link BstMap}. Nodes are immutable, and are also the entries of the map, so that
+ * iterating over a map need not allocate an entry per element.
+ */
+public final class TreapNode<K, V> extends BstNode<K, TreapNode<K, V>> implements Entry<K, V> {
   private final V value;
 
   final int heapKey;
 
   final int size;
 
+  /**
+   * The summary of this subtree under the monoid of the map this node belongs to, or {@code null}
+   * if the map has none.
+   */
+  @Nullable
+  final Object summary;
+
   TreapNode(
       K key,
       V value,
       @Nullable TreapNode<K, V> left,
       @Nullable TreapNode<K, V> right,
       int heapKey) {
+    this(key, value, left, right, heapKey, null);
+  }
+
+  TreapNode(
+      K key,
+      V value,
+      @Nullable TreapNode<K, V> left,
+      @Nullable TreapNode<K, V> right,
+      int heapKey,
+      @Nullable BstMonoid<? super K, ? super V, ?> monoid) {
     super(key, left, right);
     this.value = value;
     this.heapKey = heapKey;
     this.size = 1 + ((left == null) ? 0 : left.size) + ((right == null) ? 0 : right.size);
+    this.summary = (monoid == null) ? null : summarize(monoid, key, value, left, right);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V, S> S summarize(
+      BstMonoid<? super K, ? super V, S> monoid,
+      K key,
+      V value,
+      @Nullable TreapNode<K, V> left,
+      @Nullable TreapNode<K, V> right) {
+    S result = monoid.summarize(key, value);
+    if (left != null) {
+      result = monoid.combine((S) left.summary, result);
+    }
+    if (right != null) {
+      result = monoid.combine(result, (S) right.summary);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the heap key for a node with the specified key: a mix of its hash code, so that the
+   * shape of a treap depends only on its keys and building one needs no shared random source.
+   */
+  static int heapKey(Object key) {
+    return IntBstMap.heapKey(key.hashCode());
   }
 
+  @Override
   public V getValue() {
     return value;
   }
 
+  @Override
+  public V setValue(V value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (obj instanceof Entry) {
+      Entry<?, ?> entry = (Entry<?, ?>) obj;
+      return Objects.equal(getKey(), entry.getKey()) && Objects.equal(value, entry.getValue());
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    K key = getKey();
+    return ((key == null) ? 0 : key.hashCode()) ^ ((value == null) ? 0 : value.hashCode());
+  }
+
+  @Override
+  public String toString() {
+    return getKey() + "=" + value;
+  }
+
   @SuppressWarnings({ "unchecked", "rawtypes" })
   public static <K, V> BstNodeFactory<TreapNode<K, V>> nodeFactory() {
     return (BstNodeFactory) NODE_FACTORY;
   }
 
+  /**
+   * Returns a node factory whose nodes keep their subtree's summary under {@code monoid}, or the
+   * plain node factory if {@code monoid} is null.
+   */
+  static <K, V> BstNodeFactory<TreapNode<K, V>> nodeFactory(
+      @Nullable final BstMonoid<? super K, ? super V, ?> monoid) {
+    if (monoid == null) {
+      return nodeFactory();
+    }
+    return new BstNodeFactory<TreapNode<K, V>>() {
+      @Override
+      public TreapNode<K, V> createNode(
+          TreapNode<K, V> source,
+          @Nullable TreapNode<K, V> left,
+          @Nullable TreapNode<K, V> right) {
+        return new TreapNode<K, V>(source.getKey(), source.getValue(), left, right,
+            source.heapKey, monoid);
+      }
+    };
+  }
+
   @SuppressWarnings({ "unchecked", "rawtypes" })
   public static <K, V> BstBalancePolicy<TreapNode<K, V>> balancePolicy() {
     return (BstBalancePolicy) BALANCE_POLICY;
@@ -0,0 +1,81 @@
+package org.learningu.scheduling;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+
+import junit.framework.TestCase;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.SerialGraph.SerialPeriod;
+import org.learningu.scheduling.graph.SerialGraph.SerialRoom;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+public abstract class BaseScheduleTest extends TestCase {
+  /**
+   * A program with one time block, Saturday Morning, of the periods 10AM, 11AM and 12PM, and the
+   * rooms Harper130, for 75, and Harper135 and Harper141, for 20, which are open all morning.
+   * Subclasses add the teachers and sections they need.
+   */
+  protected static class MorningProgramModule extends TestProgramModule {
+    protected SerialPeriod tenAM;
+
+    protected SerialPeriod elevenAM;
+
+    protected SerialPeriod noon;
+
+    protected SerialRoom harper130;
+
+    protected SerialRoom harper135;
+
+    protected SerialRoom harper141;
+
+    @Override
+    protected void configure() {
+      super.configure();
+      tenAM = bindPeriod("10AM");
+      elevenAM = bindPeriod("11AM");
+      noon = bindPeriod("12PM");
+      bindTimeBlock("Saturday Morning", tenAM, elevenAM, noon);
+      harper130 = bindRoom("Harper130", 75, tenAM, elevenAM, noon);
+      harper135 = bindRoom("Harper135", 20, tenAM, elevenAM, noon);
+      harper141 = bindRoom("Harper141", 20, tenAM, elevenAM, noon);
+    }
+  }
+
+  protected Injector injector;
+
+  protected abstract Iterable<Module> modules();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    injector = TestProgramModule.bindProgramObjects(Guice.createInjector(modules()));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    super.tearDown();
+    injector = null;
+  }
+
+  protected Section getCourse(String string) {
+    return injector.getInstance(Key.get(Section.class, Names.named(string)));
+  }
+
+  protected ClassPeriod getPeriod(String string) {
+    return injector.getInstance(Key.get(ClassPeriod.class, Names.named(string)));
+  }
+
+  protected Room getRoom(String string) {
+    return injector.getInstance(Key.get(Room.class, Names.named(string)));
+  }
+
+  protected StartAssignment assignment(String period, String room, String course) {
+    return StartAssignment.create(getPeriod(period), getRoom(room), getCourse(course));
+  }
+}
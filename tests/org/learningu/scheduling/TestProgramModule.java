@@ -1,5 +1,7 @@
 package org.learningu.scheduling;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
@@ -19,10 +21,12 @@ import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.graph.SerialGraph.SerialBuilding;
 import org.learningu.scheduling.graph.SerialGraph.SerialPeriod;
 import org.learningu.scheduling.graph.SerialGraph.SerialProgram;
+import org.learningu.scheduling.graph.SerialGraph.SerialResource;
 import org.learningu.scheduling.graph.SerialGraph.SerialRoom;
 import org.learningu.scheduling.graph.SerialGraph.SerialSection;
 import org.learningu.scheduling.graph.SerialGraph.SerialSubject;
 import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
+import org.learningu.scheduling.graph.SerialGraph.SerialTeacherGroup;
 import org.learningu.scheduling.graph.SerialGraph.SerialTimeBlock;
 import org.learningu.scheduling.graph.Teacher;
 import org.learningu.scheduling.graph.TimeBlock;
@@ -75,12 +79,31 @@ public class TestProgramModule extends AbstractModule {
 
   private List<SerialSection> serialCourses = Lists.newArrayList();
 
+  private List<SerialTeacherGroup> serialTeacherGroups = Lists.newArrayList();
+
+  private List<SerialResource> serialResources = Lists.newArrayList();
+
+  private ListMultimap<Integer, Integer> prerequisites = ArrayListMultimap.create();
+
+  private ListMultimap<Integer, Integer> teacherGroups = ArrayListMultimap.create();
+
+  private ListMultimap<Integer, Integer> requiredResources = ArrayListMultimap.create();
+
   protected SerialPeriod bindPeriod(String name) {
+    return bindPeriod(name, false);
+  }
+
+  protected SerialPeriod bindLunchPeriod(String name) {
+    return bindPeriod(name, true);
+  }
+
+  private SerialPeriod bindPeriod(String name, boolean isLunch) {
     SerialPeriod period = SerialPeriod
         .newBuilder()
         .setPeriodId(uid++)
         .setDescription(name)
         .setShortDescription(name)
+        .setIsLunch(isLunch)
         .build();
     bind(SerialPeriod.class).annotatedWith(Names.named(name)).toInstance(period);
     return period;
@@ -142,15 +165,92 @@ public class TestProgramModule extends AbstractModule {
     return course;
   }
 
+  /**
+   * Adds another section of the course of {@code course}, with the same length, size and teachers,
+   * titled {@code name}.
+   */
+  protected SerialSection bindSection(String name, SerialSection course) {
+    SerialSection section = course
+        .toBuilder()
+        .setSectionId(uid++)
+        .setCourseTitle(name)
+        .build();
+    bind(SerialSection.class).annotatedWith(Names.named(name)).toInstance(section);
+    serialCourses.add(section);
+    return section;
+  }
+
+  /**
+   * Makes the course of {@code prereq} a prerequisite of the course of {@code course}.
+   */
+  protected void addPrerequisite(SerialSection course, SerialSection prereq) {
+    prerequisites.put(course.getCourseId(), prereq.getCourseId());
+  }
+
+  /**
+   * Adds a group of {@code members}, of whom at most {@code cap} may teach at once.
+   */
+  protected SerialTeacherGroup bindTeacherGroup(String name, int cap, SerialTeacher... members) {
+    SerialTeacherGroup group = SerialTeacherGroup
+        .newBuilder()
+        .setGroupId(uid++)
+        .setName(name)
+        .setCap(cap)
+        .build();
+    for (SerialTeacher t : members) {
+      teacherGroups.put(t.getTeacherId(), group.getGroupId());
+    }
+    serialTeacherGroups.add(group);
+    return group;
+  }
+
+  /**
+   * Adds a resource with {@code floatingCount} copies that are not built into any room.
+   */
+  protected SerialResource bindResource(String name, int floatingCount) {
+    SerialResource resource = SerialResource
+        .newBuilder()
+        .setResourceId(uid++)
+        .setDescription(name)
+        .setFloatingCount(floatingCount)
+        .build();
+    serialResources.add(resource);
+    return resource;
+  }
+
+  /**
+   * Makes {@code course} require {@code resource}.
+   */
+  protected void requireResource(SerialSection course, SerialResource resource) {
+    requiredResources.put(course.getSectionId(), resource.getResourceId());
+  }
+
   @Provides
   SerialProgram createProgram() {
+    List<SerialTeacher> teachers = Lists.newArrayList();
+    for (SerialTeacher teacher : serialTeachers) {
+      teachers.add(teacher
+          .toBuilder()
+          .addAllGroupId(teacherGroups.get(teacher.getTeacherId()))
+          .build());
+    }
+    List<SerialSection> sections = Lists.newArrayList();
+    for (SerialSection section : serialCourses) {
+      sections.add(section
+          .toBuilder()
+          .addAllPrereqCourseId(prerequisites.get(section.getCourseId()))
+          .addAllRequiredResource(requiredResources.get(section.getSectionId()))
+          .build());
+    }
     return SerialProgram
         .newBuilder()
         .addAllTimeBlock(serialTimeBlocks)
-        .addAllTeacher(serialTeachers)
+        .addAllTeacher(teachers)
+        .addAllTeacherGroup(serialTeacherGroups)
         .addSubject(SerialSubject.newBuilder().setSubjectId(0).setTitle("Subject"))
         .addBuilding(SerialBuilding.newBuilder().setBuildingId(0).addAllRoom(serialRooms))
-        .addAllSection(serialCourses)
+        .addAllSection(sections)
+        .addAllResource(serialResources)
         .build();
   }
 }
@@ -1,27 +1,18 @@
 package org.learningu.scheduling.logic;
 
 import com.google.common.collect.ImmutableList;
-import com.google.inject.Guice;
-import com.google.inject.Injector;
-import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.Provides;
-import com.google.inject.name.Names;
 
 import java.util.logging.Logger;
 
-import junit.framework.TestCase;
-
+import org.learningu.scheduling.BaseScheduleTest;
 import org.learningu.scheduling.TestProgramModule;
-import org.learningu.scheduling.graph.ClassPeriod;
-import org.learningu.scheduling.graph.Room;
-import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.graph.SerialGraph.SerialPeriod;
 import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
 
-public abstract class BaseLogicTest extends TestCase {
-  protected Injector injector;
-
+public abstract class BaseLogicTest extends BaseScheduleTest {
+  @Override
   protected Iterable<Module> modules() {
     return ImmutableList.<Module> of(new TestProgramModule() {
       @Override
@@ -54,29 +45,4 @@ public abstract class BaseLogicTest extends TestCase {
       }
     });
   }
-
-  @Override
-  protected void setUp() throws Exception {
-    super.setUp();
-    injector = TestProgramModule.bindProgramObjects(Guice.createInjector(modules()));
-  }
-
-  @Override
-  protected void tearDown() throws Exception {
-    super.tearDown();
-    injector = null;
-  }
-
-  protected Section getCourse(String string) {
-    return injector.getInstance(Key.get(Section.class, Names.named(string)));
-  }
-
-  protected ClassPeriod getPeriod(String string) {
-    return injector.getInstance(Key.get(ClassPeriod.class, Names.named(string)));
-  }
-
-  protected Room getRoom(String string) {
-    return injector.getInstance(Key.get(Room.class, Names.named(string)));
-  }
-
 }
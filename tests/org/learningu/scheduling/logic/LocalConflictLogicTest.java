@@ -0,0 +1,57 @@
+package org.learningu.scheduling.logic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.inject.AbstractModule;
+import com.google.inject.Module;
+
+import java.util.Random;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+public class LocalConflictLogicTest extends BaseLogicTest {
+
+  @Override
+  protected Iterable<Module> modules() {
+    return Iterables.concat(super.modules(), ImmutableList.of(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(ScheduleLogic.class).to(LocalConflictLogic.class);
+      }
+    }));
+  }
+
+  public void testStaticFeasibility() {
+    Schedule.Factory factory = injector.getInstance(Schedule.Factory.class);
+    Schedule schedule = factory.create();
+    Section science = getCourse("ScienceCourse");
+    ClassPeriod tenAM = getPeriod("10AM");
+    ClassPeriod elevenAM = getPeriod("11AM");
+    Room harper130 = getRoom("Harper130");
+    Room harper142 = getRoom("Harper142");
+    // Alice, who teaches science, is only available at 10AM.
+    StartAssignment feasible = StartAssignment.create(tenAM, harper142, science);
+    assertTrue(schedule.isStaticallyFeasible(feasible));
+    StartAssignment unavailable = StartAssignment.create(elevenAM, harper142, science);
+    assertFalse(schedule.isStaticallyFeasible(unavailable));
+    assertFalse(schedule.assignStart(unavailable).getResult().isValid());
+    // Harper130 is far too big for science.
+    assertFalse(schedule.isStaticallyFeasible(StartAssignment.create(tenAM, harper130, science)));
+
+    ImmutableSet<StartAssignment> expected = ImmutableSet.of(
+        feasible,
+        StartAssignment.create(tenAM, getRoom("Harper135"), science),
+        StartAssignment.create(tenAM, getRoom("Harper141"), science));
+    Random random = new Random(0);
+    for (int i = 0; i < 20; i++) {
+      StartAssignment assign = schedule.randomFeasibleStart(science, random).get();
+      assertTrue(assign.toString(), expected.contains(assign));
+      assertTrue(schedule.assignStart(assign).getResult().isValid());
+    }
+  }
+}
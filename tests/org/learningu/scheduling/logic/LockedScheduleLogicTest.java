@@ -0,0 +1,104 @@
+package org.learningu.scheduling.logic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.Module;
+
+import java.util.List;
+
+import org.learningu.scheduling.graph.SerialGraph.SerialSection;
+import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
+import org.learningu.scheduling.logic.SerialLogic.SerialLogicImpl;
+import org.learningu.scheduling.logic.SerialLogic.SerialLogics;
+import org.learningu.scheduling.modules.ScheduleLogicModule;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.SerialSchedules.SerialSchedule;
+import org.learningu.scheduling.schedule.SerialSchedules.SerialStartAssignment;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+public class LockedScheduleLogicTest extends BaseLogicTest {
+
+  @Override
+  protected Iterable<Module> modules() {
+    return ImmutableList.<Module> of(new MorningProgramModule() {
+      @Override
+      protected void configure() {
+        super.configure();
+        SerialTeacher alice = bindTeacher("Alice", tenAM, elevenAM, noon);
+        SerialSection origami = bindCourse("OrigamiCourse", 2, 10, alice);
+        SerialSection math = bindCourse("MathCourse", 1, 10, alice);
+        bindCourse("PiratesCourse", 1, 10, alice);
+        // Origami is locked at 10AM in Harper135; math is in the fixed schedule, but not locked.
+        bind(SerialSchedule.class).toInstance(SerialSchedule
+            .newBuilder()
+            .addAssignment(SerialStartAssignment
+                .newBuilder()
+                .setPeriodId(tenAM.getPeriodId())
+                .setRoomId(harper135.getRoomId())
+                .setSectionId(origami.getSectionId())
+                .setLocked(true))
+            .addAssignment(SerialStartAssignment
+                .newBuilder()
+                .setPeriodId(tenAM.getPeriodId())
+                .setRoomId(harper130.getRoomId())
+                .setSectionId(math.getSectionId()))
+            .build());
+        bind(SerialLogics.class).toInstance(
+            SerialLogics.newBuilder().addLogic(SerialLogicImpl.LOCKED).build());
+      }
+    }, new ScheduleLogicModule());
+  }
+
+  private Schedule emptySchedule() {
+    return injector.getInstance(Schedule.Factory.class).create();
+  }
+
+  /**
+   * Returns the conditions of the local conflicts the logic reports for {@code assign}.
+   */
+  private List<String> failedConditions(StartAssignment assign) {
+    ScheduleValidator validator = injector.getInstance(ScheduleValidator.class);
+    injector.getInstance(ScheduleLogic.class).validate(validator, emptySchedule(), assign);
+    List<String> conditions = Lists.newArrayList();
+    for (LocalConflict<StartAssignment> conflict : validator.getLocalStartConflicts()) {
+      conditions.add(conflict.getFailedCondition());
+    }
+    return conditions;
+  }
+
+  public void testLockedSectionMustStayPut() {
+    StartAssignment moved = assignment("10AM", "Harper141", "OrigamiCourse");
+    assertEquals(
+        ImmutableList.of("Locked section must stay where it is locked"),
+        failedConditions(moved));
+    assertFalse(emptySchedule().assignStart(moved).getResult().isValid());
+  }
+
+  public void testLockedRoomIsUnavailable() {
+    // Origami takes Harper135 for both 10AM and 11AM.
+    for (String period : ImmutableList.of("10AM", "11AM")) {
+      StartAssignment pirates = assignment(period, "Harper135", "PiratesCourse");
+      assertEquals(ImmutableList.of("Room is locked at this time"), failedConditions(pirates));
+      assertFalse(emptySchedule().assignStart(pirates).getResult().isValid());
+    }
+    assertTrue(failedConditions(assignment("12PM", "Harper135", "PiratesCourse")).isEmpty());
+  }
+
+  public void testStaticallyFeasible() {
+    Schedule schedule = emptySchedule();
+    StartAssignment locked = StartAssignment.create(
+        getPeriod("10AM"),
+        getRoom("Harper135"),
+        getCourse("OrigamiCourse"),
+        true);
+    assertTrue(schedule.isStaticallyFeasible(locked));
+    assertTrue(schedule.assignStart(locked).getResult().isValid());
+    assertFalse(schedule.isStaticallyFeasible(assignment("11AM", "Harper135", "OrigamiCourse")));
+    assertFalse(schedule.isStaticallyFeasible(assignment("11AM", "Harper135", "PiratesCourse")));
+    assertFalse(schedule.isStaticallyFeasible(assignment("10AM", "Harper135", "MathCourse")));
+    // Assignments in the fixed schedule that are not locked do not constrain anything.
+    assertTrue(schedule.isStaticallyFeasible(assignment("11AM", "Harper141", "MathCourse")));
+    assertTrue(schedule.isStaticallyFeasible(assignment("10AM", "Harper130", "PiratesCourse")));
+    assertTrue(schedule.isStaticallyFeasible(assignment("12PM", "Harper135", "PiratesCourse")));
+  }
+}
@@ -0,0 +1,117 @@
+package org.learningu.scheduling.logic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.AbstractModule;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+
+import org.learningu.scheduling.TestProgramModule;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Teacher;
+import org.learningu.scheduling.graph.TimeBlock;
+import org.learningu.scheduling.graph.SerialGraph.SerialPeriod;
+import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+public class LunchLogicTest extends BaseLogicTest {
+  /**
+   * The number of periods in the long time block, whose last lunch period is too late for a mask.
+   */
+  private static final int LONG_BLOCK_PERIODS = Integer.SIZE + 2;
+
+  @Override
+  protected Iterable<Module> modules() {
+    return ImmutableList.<Module> of(new TestProgramModule() {
+      @Override
+      protected void configure() {
+        super.configure();
+        SerialPeriod tenAM = bindLunchPeriod("10AM");
+        SerialPeriod elevenAM = bindLunchPeriod("11AM");
+        SerialPeriod noon = bindPeriod("12PM");
+        bindTimeBlock("Saturday Morning", tenAM, elevenAM, noon);
+        SerialPeriod[] longBlock = new SerialPeriod[LONG_BLOCK_PERIODS];
+        for (int i = 0; i < LONG_BLOCK_PERIODS; i++) {
+          String name = "Sunday" + i;
+          longBlock[i] = (i == 1 || i == Integer.SIZE) ? bindLunchPeriod(name) : bindPeriod(name);
+        }
+        bindTimeBlock("Sunday Marathon", longBlock);
+        SerialTeacher carol = bindTeacher("Carol");
+        SerialTeacher ellie = bindTeacher("Ellie");
+        bindRoom("Harper130", 75);
+        bindRoom("Harper135", 20);
+        bindCourse("ScienceCourse", 1, 15, carol);
+        bindCourse("MathCourse", 1, 10, carol);
+        bindCourse("ZombiesCourse", 3, 15, ellie);
+      }
+    }, new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(ScheduleLogic.class).to(LunchLogic.class);
+      }
+    });
+  }
+
+  private Teacher getTeacher(String name) {
+    return injector.getInstance(Key.get(Teacher.class, Names.named(name)));
+  }
+
+  public void testLunchMask() {
+    Program program = injector.getInstance(Program.class);
+    Teacher carol = getTeacher("Carol");
+    TimeBlock block = getPeriod("10AM").getTimeBlock();
+    assertTrue(program.hasLunchMask(block));
+    assertEquals(3, program.getLunchMask(block));
+
+    StartAssignment math = assignment("10AM", "Harper130", "MathCourse");
+    StartAssignment science = assignment("11AM", "Harper135", "ScienceCourse");
+    Schedule schedule = injector.getInstance(Schedule.Factory.class).create()
+        .assignStart(math).getNewState();
+    assertEquals(1, schedule.lunchesTeaching(carol, block));
+    // Carol may not teach through both lunch periods...
+    assertFalse(schedule.assignStart(science).getResult().isValid());
+    // ...but may teach after them, and others may teach through them.
+    assertTrue(schedule
+        .assignStart(assignment("12PM", "Harper135", "ScienceCourse"))
+        .getResult()
+        .isValid());
+    assertTrue(schedule
+        .assignStart(assignment("10AM", "Harper135", "ZombiesCourse"))
+        .getResult()
+        .isValid());
+
+    Schedule forced = schedule.forceAssignStart(science).getNewState();
+    assertEquals(ImmutableSet.of(science), forced.getStartAssignments());
+    assertEquals(2, forced.lunchesTeaching(carol, block));
+    assertEquals(0, schedule
+        .removeStartingAt(math.getPeriod(), math.getRoom())
+        .getNewState()
+        .lunchesTeaching(carol, block));
+  }
+
+  public void testLunchTooLateForMask() {
+    Program program = injector.getInstance(Program.class);
+    TimeBlock block = getPeriod("Sunday0").getTimeBlock();
+    assertFalse(program.hasLunchMask(block));
+    assertEquals(0, program.getLunchMask(block));
+
+    String lateLunch = "Sunday" + Integer.SIZE;
+    Schedule schedule = injector.getInstance(Schedule.Factory.class).create()
+        .assignStart(assignment("Sunday1", "Harper130", "MathCourse")).getNewState();
+    assertEquals(0, schedule.lunchesTeaching(getTeacher("Carol"), block));
+    assertFalse(schedule
+        .assignStart(assignment(lateLunch, "Harper135", "ScienceCourse"))
+        .getResult()
+        .isValid());
+    assertTrue(schedule
+        .assignStart(assignment("Sunday" + (Integer.SIZE + 1), "Harper135", "ScienceCourse"))
+        .getResult()
+        .isValid());
+    assertTrue(schedule
+        .assignStart(assignment("Sunday" + (Integer.SIZE - 1), "Harper135", "ZombiesCourse"))
+        .getResult()
+        .isValid());
+  }
+}
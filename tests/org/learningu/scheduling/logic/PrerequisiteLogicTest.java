@@ -0,0 +1,100 @@
+package org.learningu.scheduling.logic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.AbstractModule;
+import com.google.inject.Module;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Course;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.SerialGraph.SerialSection;
+import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+public class PrerequisiteLogicTest extends BaseLogicTest {
+
+  @Override
+  protected Iterable<Module> modules() {
+    return ImmutableList.<Module> of(new MorningProgramModule() {
+      @Override
+      protected void configure() {
+        super.configure();
+        SerialTeacher alice = bindTeacher("Alice");
+        SerialTeacher bob = bindTeacher("Bob");
+        // Origami is bound first, so it comes before its prerequisite in section order.
+        SerialSection origami = bindCourse("OrigamiCourse", 1, 10, alice);
+        SerialSection math = bindCourse("MathCourse", 1, 10, bob);
+        bindSection("MathCourse2", math);
+        addPrerequisite(origami, math);
+      }
+    }, new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(ScheduleLogic.class).to(PrerequisiteLogic.class);
+      }
+    });
+  }
+
+  public void testCompletelyValidRegardlessOfSectionOrder() {
+    Section origami = getCourse("OrigamiCourse");
+    Section math = getCourse("MathCourse");
+    Program program = origami.getProgram();
+    assertTrue(program.getOrdinal(origami) < program.getOrdinal(math));
+
+    StartAssignment mathAssign = assignment("10AM", "Harper130", "MathCourse");
+    Schedule schedule = injector.getInstance(Schedule.Factory.class).create()
+        .assignStart(mathAssign).getNewState()
+        .assignStart(assignment("11AM", "Harper135", "OrigamiCourse")).getNewState();
+    assertEquals(2, schedule.getStartAssignments().size());
+    assertTrue(schedule.isCompletelyValid());
+
+    schedule = schedule.removeStartingAt(mathAssign.getPeriod(), mathAssign.getRoom())
+        .getNewState();
+    assertFalse(schedule.isCompletelyValid());
+  }
+
+  public void testEndingsAfterRemoval() {
+    Course math = getCourse("MathCourse").getCourse();
+    assertEquals(math, getCourse("MathCourse2").getCourse());
+    ClassPeriod tenAM = getPeriod("10AM");
+    ClassPeriod elevenAM = getPeriod("11AM");
+    ClassPeriod noon = getPeriod("12PM");
+    StartAssignment late = assignment("11AM", "Harper130", "MathCourse");
+    StartAssignment early = assignment("10AM", "Harper135", "MathCourse2");
+    StartAssignment origami = assignment("11AM", "Harper135", "OrigamiCourse");
+    Schedule schedule = injector.getInstance(Schedule.Factory.class).create();
+    assertFalse(schedule.earliestEnding(math).isPresent());
+    assertEquals(0, schedule.countEndingBefore(math, noon));
+    assertFalse(schedule.assignStart(origami).getResult().isValid());
+
+    schedule = schedule.assignStart(late).getNewState();
+    assertEquals(elevenAM, schedule.earliestEnding(math).get());
+    assertEquals(0, schedule.countEndingBefore(math, elevenAM));
+    assertEquals(1, schedule.countEndingBefore(math, noon));
+    assertFalse(schedule.assignStart(origami).getResult().isValid());
+
+    schedule = schedule.assignStart(early).getNewState();
+    assertEquals(tenAM, schedule.earliestEnding(math).get());
+    assertEquals(0, schedule.countEndingBefore(math, tenAM));
+    assertEquals(1, schedule.countEndingBefore(math, elevenAM));
+    assertEquals(2, schedule.countEndingBefore(math, noon));
+    assertTrue(schedule.assignStart(origami).getResult().isValid());
+
+    // Removing the earlier section must drop the entry it was indexed under.
+    schedule = schedule.removeStartingAt(early.getPeriod(), early.getRoom()).getNewState();
+    assertEquals(elevenAM, schedule.earliestEnding(math).get());
+    assertEquals(0, schedule.countEndingBefore(math, elevenAM));
+    assertEquals(1, schedule.countEndingBefore(math, noon));
+    assertFalse(schedule.assignStart(origami).getResult().isValid());
+    assertTrue(schedule
+        .assignStart(assignment("12PM", "Harper135", "OrigamiCourse"))
+        .getResult()
+        .isValid());
+
+    schedule = schedule.removeStartingAt(late.getPeriod(), late.getRoom()).getNewState();
+    assertFalse(schedule.earliestEnding(math).isPresent());
+    assertEquals(0, schedule.countEndingBefore(math, noon));
+  }
+}
@@ -0,0 +1,84 @@
+package org.learningu.scheduling.logic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.inject.AbstractModule;
+import com.google.inject.Module;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Resource;
+import org.learningu.scheduling.graph.SerialGraph.SerialResource;
+import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
+import org.learningu.scheduling.schedule.PresentAssignment;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+public class ResourceLogicTest extends BaseLogicTest {
+
+  @Override
+  protected Iterable<Module> modules() {
+    return ImmutableList.<Module> of(new MorningProgramModule() {
+      @Override
+      protected void configure() {
+        super.configure();
+        SerialTeacher alice = bindTeacher("Alice");
+        SerialTeacher bob = bindTeacher("Bob");
+        SerialTeacher carol = bindTeacher("Carol");
+        SerialResource projector = bindResource("Projector", 2);
+        requireResource(bindCourse("MathCourse", 1, 10, alice), projector);
+        requireResource(bindCourse("PiratesCourse", 1, 40, bob), projector);
+        requireResource(bindCourse("OrigamiCourse", 2, 10, carol), projector);
+        bindCourse("ScienceCourse", 1, 15, carol);
+      }
+    }, new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(ScheduleLogic.class).to(ResourceLogic.class);
+      }
+    });
+  }
+
+  public void testOversubscribedFloatingResource() {
+    Resource projector =
+        Iterables.getOnlyElement(injector.getInstance(Program.class).getResources());
+    ClassPeriod tenAM = getPeriod("10AM");
+    ClassPeriod elevenAM = getPeriod("11AM");
+    StartAssignment pirates = assignment("10AM", "Harper135", "PiratesCourse");
+    StartAssignment origami = assignment("10AM", "Harper141", "OrigamiCourse");
+    Schedule schedule = injector.getInstance(Schedule.Factory.class).create();
+    assertEquals(0, schedule.countDemand(projector, tenAM));
+    schedule = schedule.assignStart(assignment("10AM", "Harper130", "MathCourse")).getNewState();
+    assertEquals(1, schedule.countDemand(projector, tenAM));
+    schedule = schedule.assignStart(pirates).getNewState();
+    assertEquals(2, schedule.countDemand(projector, tenAM));
+    assertEquals(0, schedule.countDemand(projector, elevenAM));
+
+    // Both projectors are in use at 10AM.
+    ScheduleValidator validator = schedule.assignStart(origami).getResult();
+    assertFalse(validator.isValid());
+    assertEquals(
+        "Not enough available resources",
+        Iterables.getOnlyElement(validator.getLocalPresentConflicts()).getFailedCondition());
+    GlobalConflict<PresentAssignment> conflict =
+        Iterables.getOnlyElement(validator.getGlobalPresentConflicts());
+    assertEquals(1, Iterables.size(conflict.getConflictingAssignments()));
+    assertFalse(schedule.tryAssignStart(origami).getResult().isValid());
+    // Sections that need no projector are unaffected.
+    assertTrue(schedule
+        .assignStart(assignment("10AM", "Harper141", "ScienceCourse"))
+        .getResult()
+        .isValid());
+
+    schedule = schedule.removeStartingAt(pirates.getPeriod(), pirates.getRoom()).getNewState();
+    assertEquals(1, schedule.countDemand(projector, tenAM));
+    assertTrue(schedule.tryAssignStart(origami).getResult().isValid());
+    schedule = schedule.assignStart(origami).getNewState();
+    assertEquals(2, schedule.countDemand(projector, tenAM));
+    assertEquals(1, schedule.countDemand(projector, elevenAM));
+
+    schedule = schedule.removeStartingAt(origami.getPeriod(), origami.getRoom()).getNewState();
+    assertEquals(1, schedule.countDemand(projector, tenAM));
+    assertEquals(0, schedule.countDemand(projector, elevenAM));
+  }
+}
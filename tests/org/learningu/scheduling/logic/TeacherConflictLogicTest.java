@@ -1,6 +1,7 @@
 package org.learningu.scheduling.logic;
 
 import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
 import org.learningu.scheduling.graph.Section;
 import org.learningu.scheduling.graph.Room;
 import org.learningu.scheduling.schedule.Schedule;
@@ -8,6 +9,7 @@ import org.learningu.scheduling.schedule.StartAssignment;
 import org.learningu.scheduling.util.ModifiedState;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.inject.AbstractModule;
 import com.google.inject.Module;
@@ -42,4 +44,64 @@ public class TeacherConflictLogicTest extends BaseLogicTest {
     assertFalse(assign2.toString(), assign2.getResult().isValid());
     assertEquals(schedule.getStartAssignments(), assign2.getNewState().getStartAssignments());
   }
+
+  public void testForceAssignReplacesConflicts() {
+    Schedule.Factory factory = injector.getInstance(Schedule.Factory.class);
+    Section science = getCourse("ScienceCourse");
+    Section math = getCourse("MathCourse");
+    ClassPeriod tenAM = getPeriod("10AM");
+    Schedule schedule = factory.create()
+        .assignStart(StartAssignment.create(tenAM, getRoom("Harper142"), science))
+        .getNewState();
+    StartAssignment mathAssign = StartAssignment.create(tenAM, getRoom("Harper141"), math);
+    // assignStart describes the conflict...
+    ScheduleValidator described = schedule.assignStart(mathAssign).getResult();
+    assertFalse(described.isValid());
+    assertFalse(described.getGlobalPresentConflicts().isEmpty());
+    // ...tryAssignStart stops at the first conflict without recording it...
+    ScheduleValidator failed = schedule.tryAssignStart(mathAssign).getResult();
+    assertFalse(failed.isValid());
+    assertTrue(failed.getGlobalPresentConflicts().isEmpty());
+    // ...but forceAssignStart still finds every conflict to remove.
+    Schedule forced = schedule.forceAssignStart(mathAssign).getNewState();
+    assertEquals(ImmutableSet.of(mathAssign), forced.getStartAssignments());
+  }
+
+  public void testValidatorsOutliveLaterAssignments() {
+    Schedule.Factory factory = injector.getInstance(Schedule.Factory.class);
+    Section science = getCourse("ScienceCourse");
+    Section math = getCourse("MathCourse");
+    ClassPeriod tenAM = getPeriod("10AM");
+    Schedule schedule = factory.create()
+        .assignStart(StartAssignment.create(tenAM, getRoom("Harper142"), science))
+        .getNewState();
+    StartAssignment mathAssign = StartAssignment.create(tenAM, getRoom("Harper141"), math);
+    StartAssignment piratesAssign = StartAssignment.create(
+        getPeriod("11AM"),
+        getRoom("Harper135"),
+        getCourse("PiratesCourse"));
+    ScheduleValidator failed = schedule.assignStart(mathAssign).getResult();
+    ScheduleValidator forced = schedule.forceAssignStart(mathAssign).getResult();
+    assertFalse(failed.isValid());
+    assertEquals(1, failed.getGlobalPresentConflicts().size());
+    assertTrue(forced.isValid());
+    // Later edits, passing and failing, must not touch validators already returned.
+    assertTrue(schedule.assignStart(piratesAssign).getResult().isValid());
+    assertFalse(schedule.assignStart(mathAssign).getResult().isValid());
+    assertFalse(schedule.tryAssignStart(mathAssign).getResult().isValid());
+    assertFalse(failed.isValid());
+    assertEquals(1, failed.getGlobalPresentConflicts().size());
+    assertTrue(forced.isValid());
+  }
+
+  public void testSharesTeacher() {
+    Section science = getCourse("ScienceCourse");
+    Section math = getCourse("MathCourse");
+    Section pirates = getCourse("PiratesCourse");
+    Program program = science.getProgram();
+    assertTrue(program.sharesTeacher(science, math));
+    assertTrue(program.sharesTeacher(math, science));
+    assertTrue(program.sharesTeacher(science, science));
+    assertFalse(program.sharesTeacher(science, pirates));
+  }
 }
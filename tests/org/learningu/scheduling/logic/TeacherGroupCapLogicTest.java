@@ -0,0 +1,99 @@
+package org.learningu.scheduling.logic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.inject.AbstractModule;
+import com.google.inject.Module;
+
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.TeacherGroup;
+import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
+import org.learningu.scheduling.schedule.PresentAssignment;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+public class TeacherGroupCapLogicTest extends BaseLogicTest {
+
+  @Override
+  protected Iterable<Module> modules() {
+    return ImmutableList.<Module> of(new MorningProgramModule() {
+      @Override
+      protected void configure() {
+        super.configure();
+        SerialTeacher carol = bindTeacher("Carol");
+        SerialTeacher dave = bindTeacher("Dave");
+        SerialTeacher ellie = bindTeacher("Ellie");
+        bindCourse("MathCourse", 1, 10, carol);
+        bindCourse("OrigamiCourse", 2, 10, dave);
+        bindCourse("PiratesCourse", 1, 40, ellie);
+        bindTeacherGroup("Math Department", 1, carol, dave);
+      }
+    }, new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(ScheduleLogic.class).to(TeacherGroupCapLogic.class);
+      }
+    });
+  }
+
+  private TeacherGroup getGroup() {
+    return Iterables.getOnlyElement(injector.getInstance(Program.class).getTeacherGroups());
+  }
+
+  public void testCapConflictClearsAfterRemoval() {
+    TeacherGroup group = getGroup();
+    ClassPeriod tenAM = getPeriod("10AM");
+    ClassPeriod elevenAM = getPeriod("11AM");
+    StartAssignment math = assignment("10AM", "Harper130", "MathCourse");
+    StartAssignment origami = assignment("10AM", "Harper135", "OrigamiCourse");
+    Schedule schedule = injector.getInstance(Schedule.Factory.class).create()
+        .assignStart(math).getNewState();
+    assertEquals(1, schedule.countTeaching(group, tenAM));
+    assertEquals(0, schedule.countTeaching(group, elevenAM));
+
+    // Carol and Dave may not both teach at 10AM...
+    ScheduleValidator validator = schedule.assignStart(origami).getResult();
+    assertFalse(validator.isValid());
+    GlobalConflict<PresentAssignment> conflict =
+        Iterables.getOnlyElement(validator.getGlobalPresentConflicts());
+    assertEquals(
+        "Too many members of group Math Department teaching at once",
+        conflict.getFailedCondition());
+    assertEquals(
+        math,
+        Iterables.getOnlyElement(conflict.getConflictingAssignments()).getStartAssignment());
+    assertFalse(schedule.tryAssignStart(origami).getResult().isValid());
+    // ...but a teacher outside the group may.
+    assertTrue(schedule
+        .assignStart(assignment("10AM", "Harper135", "PiratesCourse"))
+        .getResult()
+        .isValid());
+
+    schedule = schedule.removeStartingAt(math.getPeriod(), math.getRoom()).getNewState();
+    assertEquals(0, schedule.countTeaching(group, tenAM));
+    assertTrue(schedule.tryAssignStart(origami).getResult().isValid());
+    schedule = schedule.assignStart(origami).getNewState();
+    assertEquals(1, schedule.countTeaching(group, tenAM));
+    assertEquals(1, schedule.countTeaching(group, elevenAM));
+    assertFalse(schedule.assignStart(assignment("11AM", "Harper130", "MathCourse"))
+        .getResult()
+        .isValid());
+    assertTrue(schedule.assignStart(assignment("12PM", "Harper130", "MathCourse"))
+        .getResult()
+        .isValid());
+  }
+
+  public void testForceAssignRemovesGroupConflicts() {
+    StartAssignment origami = assignment("10AM", "Harper135", "OrigamiCourse");
+    Schedule schedule = injector.getInstance(Schedule.Factory.class).create()
+        .assignStart(assignment("10AM", "Harper130", "MathCourse")).getNewState();
+    Schedule forced = schedule.forceAssignStart(origami).getNewState();
+    assertEquals(ImmutableSet.of(origami), forced.getStartAssignments());
+    assertEquals(0, forced
+        .removeStartingAt(origami.getPeriod(), origami.getRoom())
+        .getNewState()
+        .countTeaching(getGroup(), getPeriod("11AM")));
+  }
+}
@@ -0,0 +1,165 @@
+package org.learningu.scheduling.modules;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.inject.Module;
+import com.google.inject.Provides;
+
+import java.util.List;
+import java.util.Random;
+
+import org.learningu.scheduling.BaseScheduleTest;
+import org.learningu.scheduling.TestProgramModule;
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.SerialGraph.SerialPeriod;
+import org.learningu.scheduling.graph.SerialGraph.SerialSection;
+import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
+import org.learningu.scheduling.logic.ChainedScheduleLogic;
+import org.learningu.scheduling.logic.DuplicateSectionLogic;
+import org.learningu.scheduling.logic.RoomConflictLogic;
+import org.learningu.scheduling.logic.ScheduleLogic;
+import org.learningu.scheduling.modules.ScorerModule.ScoreAccumulator;
+import org.learningu.scheduling.modules.ScorerModule.ScorerImpl;
+import org.learningu.scheduling.schedule.Schedule;
+import org.learningu.scheduling.schedule.ScheduleDelta;
+import org.learningu.scheduling.schedule.StartAssignment;
+
+public class ScorerModuleTest extends BaseScheduleTest {
+  private static final double[] EXPONENTS = { 1.0, 1.7 };
+
+  private static final int STEPS = 200;
+
+  @Override
+  protected Iterable<Module> modules() {
+    return ImmutableList.<Module> of(new TestProgramModule() {
+      @Override
+      protected void configure() {
+        super.configure();
+        SerialPeriod nineAM = bindPeriod("9AM");
+        SerialPeriod tenAM = bindPeriod("10AM");
+        SerialPeriod elevenAM = bindPeriod("11AM");
+        SerialPeriod onePM = bindPeriod("1PM");
+        SerialPeriod twoPM = bindPeriod("2PM");
+        bindTimeBlock("Morning", nineAM, tenAM, elevenAM);
+        bindTimeBlock("Afternoon", onePM, twoPM);
+        SerialTeacher alice = bindTeacher("Alice", nineAM, tenAM, elevenAM, onePM, twoPM);
+        SerialTeacher bob = bindTeacher("Bob", tenAM, elevenAM, twoPM);
+        SerialTeacher carol = bindTeacher("Carol", nineAM, onePM, twoPM);
+        bindRoom("Harper130", 75, nineAM, tenAM, elevenAM, onePM, twoPM);
+        bindRoom("Harper135", 20, nineAM, tenAM, elevenAM, twoPM);
+        bindRoom("Harper141", 20, tenAM, elevenAM, onePM, twoPM);
+        SerialSection science = bindCourse("ScienceCourse", 1, 15, alice, carol);
+        bindCourse("PiratesCourse", 1, 40, bob);
+        SerialSection math = bindCourse("MathCourse", 1, 10, carol);
+        SerialSection origami = bindCourse("OrigamiCourse", 2, 10, bob);
+        bindCourse("ZombiesCourse", 3, 15, alice);
+        bindCourse("ChessCourse", 2, 20, alice, bob);
+        addPrerequisite(science, math);
+        addPrerequisite(origami, math);
+        addPrerequisite(origami, science);
+      }
+
+      @SuppressWarnings("unused")
+      @Provides
+      ScheduleLogic logic() {
+        return ChainedScheduleLogic.create(new DuplicateSectionLogic(), new RoomConflictLogic());
+      }
+    });
+  }
+
+  /**
+   * Checks that rescoring each schedule in a random sequence of edits from the score of the one
+   * before it agrees with scoring it from scratch.
+   */
+  public void testRescoreMatchesScore() {
+    Schedule.Factory factory = injector.getInstance(Schedule.Factory.class);
+    for (ScorerImpl impl : ScorerImpl.values()) {
+      for (double exponent : EXPONENTS) {
+        Random random = new Random(0);
+        Schedule schedule = factory.create();
+        ScoreAccumulator accum = new ScoreAccumulator(exponent, 2.0);
+        impl.score(schedule, accum);
+        for (int step = 0; step < STEPS; step++) {
+          final Schedule parent = schedule;
+          int edits = 1 + random.nextInt(3);
+          for (int i = 0; i < edits; i++) {
+            schedule = randomEdit(schedule, random);
+          }
+          ScheduleDelta delta = schedule.deltaFromAncestor(new Predicate<Schedule>() {
+            @Override
+            public boolean apply(Schedule input) {
+              return input == parent;
+            }
+          }, Integer.MAX_VALUE).get();
+          ScoreAccumulator rescored = accum.copy();
+          impl.rescore(delta, rescored);
+          ScoreAccumulator expected = new ScoreAccumulator(exponent, 2.0);
+          impl.score(schedule, expected);
+          assertEquals(
+              impl + " with exponent " + exponent + " at step " + step,
+              expected.getTotal(),
+              rescored.getTotal(),
+              1e-9);
+          accum = rescored;
+          schedule.forgetAncestors();
+        }
+      }
+    }
+  }
+
+  public void testPrerequisiteOrdering() {
+    Schedule.Factory factory = injector.getInstance(Schedule.Factory.class);
+    StartAssignment math = assignment("9AM", "Harper130", "MathCourse");
+    Schedule schedule = factory.create().assignAll(ImmutableList.of(
+        math,
+        assignment("10AM", "Harper130", "ScienceCourse"),
+        assignment("1PM", "Harper130", "OrigamiCourse"))).getNewState();
+    // science follows math, and origami follows both math and science
+    assertEquals(3.0, prerequisiteOrdering(schedule), 1e-9);
+
+    final Schedule parent = schedule;
+    schedule = schedule.removeStartingAt(math.getPeriod(), math.getRoom()).getNewState();
+    assertEquals(1.0, prerequisiteOrdering(schedule), 1e-9);
+    ScheduleDelta delta = schedule.deltaFromAncestor(new Predicate<Schedule>() {
+      @Override
+      public boolean apply(Schedule input) {
+        return input == parent;
+      }
+    }, 1).get();
+    ScoreAccumulator accum = new ScoreAccumulator(1.0, 1.0);
+    ScorerImpl.PREREQUISITE_ORDERING.score(parent, accum);
+    ScorerImpl.PREREQUISITE_ORDERING.rescore(delta, accum);
+    assertEquals(1.0, accum.getTotal(), 1e-9);
+  }
+
+  private static double prerequisiteOrdering(Schedule schedule) {
+    ScoreAccumulator accum = new ScoreAccumulator(1.0, 1.0);
+    ScorerImpl.PREREQUISITE_ORDERING.score(schedule, accum);
+    return accum.getTotal();
+  }
+
+  private Schedule randomEdit(Schedule schedule, Random random) {
+    Program program = schedule.getProgram();
+    int kind = random.nextInt(3);
+    if (kind == 0 && !schedule.getStartAssignments().isEmpty()) {
+      StartAssignment assign = schedule.randomAssignment(random).get();
+      return schedule.removeStartingAt(assign.getPeriod(), assign.getRoom()).getNewState();
+    }
+    List<Section> sections = ImmutableList.copyOf(program.getSections());
+    List<ClassPeriod> periods = ImmutableList.copyOf(program.getPeriods());
+    Section section = sections.get(random.nextInt(sections.size()));
+    ClassPeriod period = periods.get(random.nextInt(periods.size()));
+    Room room = Iterables.get(program.getRooms(), random.nextInt(program.getRooms().size()));
+    if (period.getIndex() + section.getPeriodLength() > period.getTimeBlock().getPeriods().size()) {
+      return schedule;
+    }
+    StartAssignment assign = StartAssignment.create(period, room, section);
+    return (kind == 1)
+        ? schedule.assignStart(assign).getNewState()
+        : schedule.forceAssignStart(assign).getNewState();
+  }
+}
@@ -0,0 +1,255 @@
+package org.learningu.scheduling.schedule;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.inject.Module;
+import com.google.inject.Provides;
+
+import org.learningu.scheduling.BaseScheduleTest;
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Teacher;
+import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
+import org.learningu.scheduling.logic.ChainedScheduleLogic;
+import org.learningu.scheduling.logic.DuplicateSectionLogic;
+import org.learningu.scheduling.logic.RoomConflictLogic;
+import org.learningu.scheduling.logic.ScheduleLogic;
+import org.learningu.scheduling.logic.ScheduleValidator;
+
+public class MutableScheduleTest extends BaseScheduleTest {
+  /**
+   * A logic that, once strict, only accepts assignments into an empty schedule, but reports
+   * assignments starting at the same time as global conflicts. So removing those conflicts is not
+   * always enough to make room.
+   */
+  private static final class EmptyScheduleLogic extends ScheduleLogic {
+    boolean strict = false;
+
+    @Override
+    public void validate(ScheduleValidator validator, Schedule schedule,
+        StartAssignment assignment) {
+      super.validate(validator, schedule, assignment);
+      if (!strict) {
+        return;
+      }
+      ImmutableSet.Builder<StartAssignment> concurrent = ImmutableSet.builder();
+      for (StartAssignment other : schedule.getStartAssignments()) {
+        if (other.getPeriod().equals(assignment.getPeriod())) {
+          concurrent.add(other);
+        }
+      }
+      ImmutableSet<StartAssignment> conflicts = concurrent.build();
+      if (conflicts.isEmpty()) {
+        validator.validateLocal(
+            schedule.getStartAssignments().isEmpty(),
+            assignment,
+            "Schedule must be empty");
+      } else {
+        validator.validateGlobal(assignment, conflicts, "Starts at the same time");
+      }
+    }
+  }
+
+  private final EmptyScheduleLogic emptyScheduleLogic = new EmptyScheduleLogic();
+
+  @Override
+  protected Iterable<Module> modules() {
+    return ImmutableList.<Module> of(new MorningProgramModule() {
+      @Override
+      protected void configure() {
+        super.configure();
+        SerialTeacher alice = bindTeacher("Alice");
+        bindCourse("ScienceCourse", 1, 15, alice);
+        bindCourse("PiratesCourse", 1, 40, alice);
+        bindCourse("MathCourse", 1, 10, alice);
+        bindCourse("OrigamiCourse", 2, 10, alice);
+      }
+
+      @SuppressWarnings("unused")
+      @Provides
+      ScheduleLogic logic() {
+        return ChainedScheduleLogic.create(
+            new DuplicateSectionLogic(),
+            new RoomConflictLogic(),
+            emptyScheduleLogic);
+      }
+    });
+  }
+
+  private Schedule emptySchedule() {
+    return injector.getInstance(Schedule.Factory.class).create();
+  }
+
+  /**
+   * Checks that {@code schedule} holds exactly {@code expected}, according to its indices as well
+   * as its set of assignments.
+   */
+  private static void assertContents(Schedule schedule, StartAssignment... expected) {
+    assertEquals(ImmutableSet.copyOf(expected), ImmutableSet.copyOf(schedule.getStartAssignments()));
+    int occupied = 0;
+    for (Room room : schedule.getProgram().getRooms()) {
+      for (ClassPeriod period : schedule.getProgram().getPeriods()) {
+        if (schedule.occurringAt(period, room).isPresent()) {
+          occupied++;
+        }
+      }
+    }
+    int expectedOccupied = 0;
+    for (StartAssignment assign : expected) {
+      assertEquals(assign, schedule.startingAt(assign.getPeriod(), assign.getRoom()).orNull());
+      expectedOccupied += assign.getSection().getPeriodLength();
+    }
+    assertEquals(expectedOccupied, occupied);
+    // every section is taught by Alice, the only teacher
+    Teacher alice = Iterables.getOnlyElement(schedule.getProgram().getTeachers());
+    for (ClassPeriod period : schedule.getProgram().getPeriods()) {
+      int running = countRunning(period, expected);
+      assertEquals(period.toString(), running, schedule.occurringAt(period).size());
+      assertEquals(period.toString(), running > 0, schedule.isTeaching(alice, period));
+    }
+  }
+
+  private static int countRunning(ClassPeriod period, StartAssignment... assigns) {
+    int count = 0;
+    for (StartAssignment assign : assigns) {
+      if (assign.getPresentPeriods().contains(period)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public void testSnapshotsUnchangedByLaterEdits() {
+    StartAssignment science = assignment("10AM", "Harper130", "ScienceCourse");
+    StartAssignment pirates = assignment("10AM", "Harper135", "PiratesCourse");
+    StartAssignment math = assignment("11AM", "Harper130", "MathCourse");
+    StartAssignment origami = assignment("11AM", "Harper135", "OrigamiCourse");
+    MutableSchedule mutable = emptySchedule().mutableCopy();
+    assertTrue(mutable.assignStart(science).isValid());
+    assertTrue(mutable.assignStart(pirates).isValid());
+    Schedule first = mutable.snapshot();
+    assertSame(first, mutable.snapshot());
+
+    assertTrue(mutable.assignStart(math).isValid());
+    mutable.removeStartingAt(science.getPeriod(), science.getRoom());
+    Schedule second = mutable.snapshot();
+
+    // edits after a mark renew the token, so they may be made in place without touching snapshots
+    mutable.mark();
+    mutable.removeStartingAt(pirates.getPeriod(), pirates.getRoom());
+    assertTrue(mutable.assignStart(origami).isValid());
+    mutable.removeStartingAt(math.getPeriod(), math.getRoom());
+    Schedule third = mutable.snapshot();
+    assertTrue(mutable.assignStart(science).isValid());
+
+    assertContents(first, science, pirates);
+    assertContents(second, pirates, math);
+    assertContents(third, origami);
+    assertContents(mutable.snapshot(), origami, science);
+  }
+
+  public void testRollback() {
+    StartAssignment science = assignment("10AM", "Harper130", "ScienceCourse");
+    StartAssignment pirates = assignment("10AM", "Harper135", "PiratesCourse");
+    StartAssignment math = assignment("11AM", "Harper130", "MathCourse");
+    StartAssignment origami = assignment("11AM", "Harper135", "OrigamiCourse");
+    Schedule base = emptySchedule();
+    MutableSchedule mutable = base.mutableCopy();
+    int start = mutable.mark();
+    assertTrue(mutable.assignStart(science).isValid());
+    Schedule marked = mutable.snapshot();
+
+    int middle = mutable.mark();
+    assertTrue(mutable.assignStart(pirates).isValid());
+    mutable.removeStartingAt(science.getPeriod(), science.getRoom());
+    Schedule beforeRollback = mutable.snapshot();
+    assertTrue(mutable.assignStart(math).isValid());
+    mutable.rollback(middle);
+    assertContents(mutable.snapshot(), science);
+
+    // later edits must not disturb the rolled-back state or anything snapshotted before it
+    assertTrue(mutable.assignStart(origami).isValid());
+    assertContents(mutable.snapshot(), science, origami);
+    assertContents(marked, science);
+    assertContents(beforeRollback, pirates);
+
+    mutable.rollback(start);
+    assertSame(base, mutable.snapshot());
+    assertTrue(mutable.assignStart(math).isValid());
+    assertContents(mutable.snapshot(), math);
+    assertContents(base);
+    assertContents(marked, science);
+    assertContents(beforeRollback, pirates);
+  }
+
+  public void testTryAssignStartOnlyTellsWhetherItFailed() {
+    StartAssignment science = assignment("10AM", "Harper130", "ScienceCourse");
+    StartAssignment pirates = assignment("10AM", "Harper130", "PiratesCourse");
+    MutableSchedule mutable = emptySchedule().mutableCopy();
+    assertTrue(mutable.tryAssignStart(science).isValid());
+
+    ScheduleValidator failed = mutable.tryAssignStart(pirates);
+    assertFalse(failed.isValid());
+    assertTrue(failed.getGlobalPresentConflicts().isEmpty());
+    ScheduleValidator described = mutable.assignStart(pirates);
+    assertFalse(described.isValid());
+    assertFalse(described.getGlobalPresentConflicts().isEmpty());
+    assertContents(mutable.snapshot(), science);
+  }
+
+  public void testSnapshotDeltaFromAncestor() {
+    StartAssignment science = assignment("10AM", "Harper130", "ScienceCourse");
+    StartAssignment pirates = assignment("10AM", "Harper135", "PiratesCourse");
+    StartAssignment math = assignment("11AM", "Harper130", "MathCourse");
+    final Schedule base = emptySchedule().assignStart(science).getNewState();
+    MutableSchedule mutable = base.mutableCopy();
+    assertTrue(mutable.assignStart(pirates).isValid());
+    mutable.removeStartingAt(science.getPeriod(), science.getRoom());
+    assertTrue(mutable.assignStart(math).isValid());
+    mutable.removeStartingAt(math.getPeriod(), math.getRoom());
+    Schedule snapshot = mutable.snapshot();
+
+    ScheduleDelta delta = snapshot.deltaFromAncestor(new Predicate<Schedule>() {
+      @Override
+      public boolean apply(Schedule input) {
+        return input == base;
+      }
+    }, 1).get();
+    assertSame(base, delta.getBefore());
+    assertSame(snapshot, delta.getAfter());
+    assertEquals(ImmutableSet.of(pirates), delta.getAdded());
+    assertEquals(ImmutableSet.of(science), delta.getRemoved());
+
+    Predicate<Schedule> never = Predicates.alwaysFalse();
+    assertFalse(snapshot.deltaFromAncestor(never, 10).isPresent());
+  }
+
+  public void testForceAssignRollsBackWhenAssignFails() {
+    StartAssignment science = assignment("10AM", "Harper130", "ScienceCourse");
+    StartAssignment math = assignment("11AM", "Harper130", "MathCourse");
+    StartAssignment pirates = assignment("10AM", "Harper135", "PiratesCourse");
+    Schedule base = emptySchedule()
+        .assignStart(science).getNewState()
+        .assignStart(math).getNewState();
+    emptyScheduleLogic.strict = true;
+
+    // Pirates conflicts globally with science, but once science is removed, math is still there.
+    MutableSchedule mutable = base.mutableCopy();
+    int mark = mutable.mark();
+    assertFalse(mutable.forceAssignStart(pirates).isValid());
+    assertContents(mutable.snapshot(), science, math);
+    assertSame(base, mutable.snapshot());
+    mutable.rollback(mark);
+    assertSame(base, mutable.snapshot());
+
+    // Without math, removing science does make room.
+    base = base.removeStartingAt(math.getPeriod(), math.getRoom()).getNewState();
+    mutable = base.mutableCopy();
+    assertTrue(mutable.forceAssignStart(pirates).isValid());
+    assertContents(mutable.snapshot(), pirates);
+    assertContents(base, science);
+  }
+}
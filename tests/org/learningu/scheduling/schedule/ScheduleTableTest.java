@@ -0,0 +1,151 @@
+package org.learningu.scheduling.schedule;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.Guice;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.learningu.scheduling.TestProgramModule;
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Program;
+import org.learningu.scheduling.graph.Room;
+import org.learningu.scheduling.graph.Section;
+import org.learningu.scheduling.graph.SerialGraph.SerialPeriod;
+import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
+import org.learningu.scheduling.util.bst.EditToken;
+
+public class ScheduleTableTest extends TestCase {
+  private static final int STEPS = 2000;
+
+  private Program program;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    program = Guice.createInjector(new TestProgramModule() {
+      @Override
+      protected void configure() {
+        super.configure();
+        SerialPeriod nineAM = bindPeriod("9AM");
+        SerialPeriod tenAM = bindPeriod("10AM");
+        SerialPeriod elevenAM = bindPeriod("11AM");
+        SerialPeriod onePM = bindPeriod("1PM");
+        SerialPeriod twoPM = bindPeriod("2PM");
+        SerialPeriod fourPM = bindPeriod("4PM");
+        SerialPeriod fivePM = bindPeriod("5PM");
+        SerialPeriod sixPM = bindPeriod("6PM");
+        bindTimeBlock("Morning", nineAM, tenAM, elevenAM);
+        bindTimeBlock("Afternoon", onePM, twoPM);
+        bindTimeBlock("Evening", fourPM, fivePM, sixPM);
+        SerialTeacher alice = bindTeacher("Alice");
+        bindRoom("Harper130", 75);
+        bindRoom("Harper135", 20);
+        bindRoom("Harper141", 20);
+        for (int i = 0; i < 12; i++) {
+          bindCourse("Course" + i, 1 + i % 3, 10, alice);
+        }
+      }
+    }).getInstance(Program.class);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    super.tearDown();
+    program = null;
+  }
+
+  /**
+   * Applies the same random sequence of edits to both table implementations, some of them in
+   * place, and checks that they agree on every query after each edit, and that each batch of
+   * in-place edits leaves the tables it started from unchanged.
+   */
+  public void testGridMatchesBst() {
+    Random random = new Random(0);
+    List<Section> sections = ImmutableList.copyOf(program.getSections());
+    List<ClassPeriod> periods = ImmutableList.copyOf(program.getPeriods());
+    List<Room> rooms = ImmutableList.copyOf(program.getRooms());
+    List<StartAssignment> assigned = Lists.newArrayList();
+    ScheduleTable bst = BstScheduleTable.create(program);
+    ScheduleTable grid = GridScheduleTable.create(program);
+    // never edited in place
+    ScheduleTable reference = BstScheduleTable.create(program);
+    ScheduleTable batchStart = reference;
+    ScheduleTable bstBatchStart = bst;
+    ScheduleTable gridBatchStart = grid;
+    EditToken owner = null;
+    for (int step = 0; step < STEPS; step++) {
+      if (random.nextInt(4) == 0) {
+        assertSameAnswers(batchStart, bstBatchStart, "before step " + step);
+        assertSameAnswers(batchStart, gridBatchStart, "before step " + step);
+        // start a new batch of in-place edits, or stop editing in place
+        owner = random.nextBoolean() ? new EditToken() : null;
+        batchStart = reference;
+        bstBatchStart = bst;
+        gridBatchStart = grid;
+      }
+      if (!assigned.isEmpty() && random.nextInt(3) == 0) {
+        StartAssignment assign = assigned.remove(random.nextInt(assigned.size()));
+        reference = reference.without(assign, null);
+        bst = bst.without(assign, owner);
+        grid = grid.without(assign, owner);
+      } else {
+        Section section = sections.get(random.nextInt(sections.size()));
+        ClassPeriod period = periods.get(random.nextInt(periods.size()));
+        Room room = rooms.get(random.nextInt(rooms.size()));
+        if (period.getIndex() + section.getPeriodLength() > period
+            .getTimeBlock()
+            .getPeriods()
+            .size()) {
+          continue;
+        }
+        StartAssignment assign = StartAssignment.create(period, room, section);
+        if (!isFree(reference, assign, assigned)) {
+          continue;
+        }
+        assigned.add(assign);
+        reference = reference.with(assign, null);
+        bst = bst.with(assign, owner);
+        grid = grid.with(assign, owner);
+      }
+      assertSameAnswers(reference, bst, "step " + step);
+      assertSameAnswers(reference, grid, "step " + step);
+    }
+  }
+
+  private static boolean isFree(ScheduleTable table, StartAssignment assign,
+      List<StartAssignment> assigned) {
+    for (StartAssignment other : assigned) {
+      if (other.getSection().equals(assign.getSection())) {
+        return false;
+      }
+    }
+    for (ClassPeriod period : assign.getPresentPeriods()) {
+      if (table.occupying(assign.getRoom(), period) != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void assertSameAnswers(ScheduleTable expected, ScheduleTable actual, String message) {
+    for (Room room : program.getRooms()) {
+      assertEquals(
+          message,
+          ImmutableList.copyOf(expected.startingIn(room).entrySet()),
+          ImmutableList.copyOf(actual.startingIn(room).entrySet()));
+      for (ClassPeriod period : program.getPeriods()) {
+        String where = message + " at " + room + ", " + period;
+        assertEquals(where, expected.startingAt(room, period), actual.startingAt(room, period));
+        assertEquals(
+            where,
+            expected.startingBefore(room, period),
+            actual.startingBefore(room, period));
+        assertEquals(where, expected.occupying(room, period), actual.occupying(room, period));
+      }
+    }
+  }
+}
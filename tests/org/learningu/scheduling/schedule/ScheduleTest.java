@@ -0,0 +1,143 @@
+package org.learningu.scheduling.schedule;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.Provides;
+import com.google.inject.name.Names;
+
+import org.learningu.scheduling.BaseScheduleTest;
+import org.learningu.scheduling.graph.ClassPeriod;
+import org.learningu.scheduling.graph.Teacher;
+import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
+import org.learningu.scheduling.logic.ChainedScheduleLogic;
+import org.learningu.scheduling.logic.DuplicateSectionLogic;
+import org.learningu.scheduling.logic.RoomConflictLogic;
+import org.learningu.scheduling.logic.ScheduleLogic;
+
+public class ScheduleTest extends BaseScheduleTest {
+
+  @Override
+  protected Iterable<Module> modules() {
+    return ImmutableList.<Module> of(new MorningProgramModule() {
+      @Override
+      protected void configure() {
+        super.configure();
+        SerialTeacher alice = bindTeacher("Alice");
+        SerialTeacher bob = bindTeacher("Bob");
+        bindCourse("MathCourse", 1, 10, alice);
+        bindCourse("OrigamiCourse", 2, 10, bob);
+        bindCourse("ScienceCourse", 1, 15, alice);
+      }
+
+      @SuppressWarnings("unused")
+      @Provides
+      ScheduleLogic logic() {
+        return ChainedScheduleLogic.create(new DuplicateSectionLogic(), new RoomConflictLogic());
+      }
+    });
+  }
+
+  private Schedule emptySchedule() {
+    return injector.getInstance(Schedule.Factory.class).create();
+  }
+
+  private Teacher getTeacher(String name) {
+    return injector.getInstance(Key.get(Teacher.class, Names.named(name)));
+  }
+
+  public void testOccurringAtFollowsMultiPeriodSection() {
+    ClassPeriod tenAM = getPeriod("10AM");
+    ClassPeriod elevenAM = getPeriod("11AM");
+    ClassPeriod noon = getPeriod("12PM");
+    StartAssignment origami = assignment("10AM", "Harper135", "OrigamiCourse");
+    StartAssignment math = assignment("11AM", "Harper130", "MathCourse");
+    Schedule schedule = emptySchedule()
+        .assignStart(origami).getNewState()
+        .assignStart(math).getNewState();
+
+    for (ClassPeriod period : ImmutableList.of(tenAM, elevenAM)) {
+      PresentAssignment present = schedule.occurringAt(period).get(getRoom("Harper135"));
+      assertEquals(period, present.getPeriod());
+      assertEquals(origami, present.getStartAssignment());
+    }
+    assertEquals(1, schedule.occurringAt(tenAM).size());
+    assertEquals(2, schedule.occurringAt(elevenAM).size());
+    assertEquals(
+        math.getPresentAssignment(0),
+        schedule.occurringAt(elevenAM).get(getRoom("Harper130")));
+    assertTrue(schedule.occurringAt(noon).isEmpty());
+
+    schedule = schedule.removeStartingAt(tenAM, getRoom("Harper135")).getNewState();
+    assertTrue(schedule.occurringAt(tenAM).isEmpty());
+    assertEquals(
+        ImmutableMap.of(getRoom("Harper130"), math.getPresentAssignment(0)),
+        schedule.occurringAt(elevenAM));
+    assertTrue(schedule.occurringAt(noon).isEmpty());
+  }
+
+  public void testIsTeachingCountsEverySection() {
+    Teacher alice = getTeacher("Alice");
+    Teacher bob = getTeacher("Bob");
+    ClassPeriod tenAM = getPeriod("10AM");
+    ClassPeriod elevenAM = getPeriod("11AM");
+    StartAssignment math = assignment("10AM", "Harper130", "MathCourse");
+    StartAssignment science = assignment("10AM", "Harper141", "ScienceCourse");
+    Schedule schedule = emptySchedule();
+    assertFalse(schedule.isTeaching(alice, tenAM));
+
+    schedule = schedule.assignStart(assignment("10AM", "Harper135", "OrigamiCourse"))
+        .getNewState();
+    assertTrue(schedule.isTeaching(bob, tenAM));
+    assertTrue(schedule.isTeaching(bob, elevenAM));
+    assertFalse(schedule.isTeaching(alice, tenAM));
+
+    // Nothing here stops Alice from teaching two sections at once.
+    schedule = schedule.assignStart(math).getNewState().assignStart(science).getNewState();
+    assertTrue(schedule.isTeaching(alice, tenAM));
+    assertFalse(schedule.isTeaching(alice, elevenAM));
+
+    // She is still busy until both of them are removed.
+    schedule = schedule.removeStartingAt(tenAM, math.getRoom()).getNewState();
+    assertTrue(schedule.isTeaching(alice, tenAM));
+    schedule = schedule.removeStartingAt(tenAM, science.getRoom()).getNewState();
+    assertFalse(schedule.isTeaching(alice, tenAM));
+    assertTrue(schedule.isTeaching(bob, elevenAM));
+
+    schedule = schedule.removeStartingAt(tenAM, getRoom("Harper135")).getNewState();
+    assertFalse(schedule.isTeaching(bob, tenAM));
+    assertFalse(schedule.isTeaching(bob, elevenAM));
+  }
+
+  public void testFingerprintDependsOnlyOnAssignments() {
+    StartAssignment math = assignment("10AM", "Harper130", "MathCourse");
+    StartAssignment origami = assignment("11AM", "Harper135", "OrigamiCourse");
+    StartAssignment science = assignment("12PM", "Harper141", "ScienceCourse");
+    Schedule empty = emptySchedule();
+    Schedule base = empty.assignStart(math).getNewState();
+
+    Schedule forward = base
+        .assignStart(origami).getNewState()
+        .assignStart(science).getNewState();
+    Schedule backward = empty
+        .assignStart(science).getNewState()
+        .assignStart(assignment("10AM", "Harper135", "MathCourse")).getNewState()
+        .assignStart(origami).getNewState()
+        .removeStartingAt(getPeriod("10AM"), getRoom("Harper135")).getNewState()
+        .assignStart(math).getNewState();
+    assertEquals(forward.getFingerprint(), backward.getFingerprint());
+    assertEquals(forward, backward);
+    assertEquals(forward.hashCode(), backward.hashCode());
+    assertFalse(forward.getFingerprint() == base.getFingerprint());
+
+    Schedule undone = base
+        .assignStart(origami).getNewState()
+        .removeStartingAt(origami.getPeriod(), origami.getRoom()).getNewState();
+    assertEquals(base.getFingerprint(), undone.getFingerprint());
+    assertEquals(base, undone);
+    assertEquals(
+        empty.getFingerprint(),
+        base.removeStartingAt(math.getPeriod(), math.getRoom()).getNewState().getFingerprint());
+  }
+}
@@ -0,0 +1,73 @@
+package org.learningu.scheduling.schedule;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Module;
+import com.google.inject.Provides;
+
+import org.learningu.scheduling.BaseScheduleTest;
+import org.learningu.scheduling.graph.SerialGraph.SerialTeacher;
+import org.learningu.scheduling.logic.ChainedScheduleLogic;
+import org.learningu.scheduling.logic.DuplicateSectionLogic;
+import org.learningu.scheduling.logic.RoomConflictLogic;
+import org.learningu.scheduling.logic.ScheduleLogic;
+
+public class SchedulesTest extends BaseScheduleTest {
+
+  @Override
+  protected Iterable<Module> modules() {
+    return ImmutableList.<Module> of(new MorningProgramModule() {
+      @Override
+      protected void configure() {
+        super.configure();
+        SerialTeacher alice = bindTeacher("Alice");
+        SerialTeacher bob = bindTeacher("Bob");
+        bindCourse("MathCourse", 1, 10, alice);
+        bindCourse("ScienceCourse", 1, 15, alice);
+        bindCourse("OrigamiCourse", 2, 10, bob);
+        bindCourse("PiratesCourse", 1, 40, bob);
+      }
+
+      @SuppressWarnings("unused")
+      @Provides
+      ScheduleLogic logic() {
+        return ChainedScheduleLogic.create(new DuplicateSectionLogic(), new RoomConflictLogic());
+      }
+    });
+  }
+
+  public void testDiffFromSharedAncestor() {
+    StartAssignment math = assignment("10AM", "Harper130", "MathCourse");
+    StartAssignment origami = assignment("10AM", "Harper135", "OrigamiCourse");
+    StartAssignment science = assignment("12PM", "Harper141", "ScienceCourse");
+    StartAssignment pirates = assignment("12PM", "Harper130", "PiratesCourse");
+    StartAssignment movedMath = assignment("11AM", "Harper141", "MathCourse");
+    Schedule ancestor = injector.getInstance(Schedule.Factory.class).create()
+        .assignAll(ImmutableList.of(math, origami, science)).getNewState();
+    Schedule before = ancestor.assignStart(pirates).getNewState();
+    Schedule after = ancestor
+        .removeStartingAt(science.getPeriod(), science.getRoom()).getNewState()
+        .removeStartingAt(math.getPeriod(), math.getRoom()).getNewState()
+        .assignStart(movedMath).getNewState();
+
+    ScheduleDelta delta = Schedules.diff(before, after);
+    assertSame(before, delta.getBefore());
+    assertSame(after, delta.getAfter());
+    assertEquals(ImmutableSet.of(movedMath), delta.getAdded());
+    assertEquals(ImmutableSet.of(math, science, pirates), delta.getRemoved());
+    assertEquals(ImmutableMap.of(math, movedMath), delta.getMoved());
+    assertFalse(delta.isEmpty());
+
+    ScheduleDelta reverse = Schedules.diff(after, before);
+    assertEquals(ImmutableSet.of(math, science, pirates), reverse.getAdded());
+    assertEquals(ImmutableSet.of(movedMath), reverse.getRemoved());
+    assertEquals(ImmutableMap.of(movedMath, math), reverse.getMoved());
+
+    assertTrue(Schedules.diff(ancestor, ancestor).isEmpty());
+    // The same assignments reached by a different path make no difference either.
+    Schedule rebuilt = before.removeStartingAt(pirates.getPeriod(), pirates.getRoom())
+        .getNewState();
+    assertTrue(Schedules.diff(ancestor, rebuilt).isEmpty());
+  }
+}
@@ -3,13 +3,18 @@ package org.learningu.scheduling.util.bst;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.SortedMap;
+import java.util.TreeMap;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedMap.Builder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.testing.MapTestSuiteBuilder;
 import com.google.common.collect.testing.SortedMapInterfaceTest;
 import com.google.common.collect.testing.TestStringMapGenerator;
@@ -75,4 +80,141 @@ public class BstMapTest extends SortedMapInterfaceTest<String, String> {
   protected String getValueNotInPopulatedMap() throws UnsupportedOperationException {
     return "3";
   }
+
+  public void testDiff() {
+    BstMap<String, String> before = (BstMap<String, String>) makePopulatedMap();
+    BstMap<String, String> after = before.delete("b").insert("c", "3").insert("e", "6");
+    final List<String> changes = Lists.newArrayList();
+    before.diff(after, new BstDiffVisitor<String, String>() {
+      @Override
+      public void removed(String key, String value) {
+        changes.add("-" + key + value);
+      }
+
+      @Override
+      public void added(String key, String value) {
+        changes.add("+" + key + value);
+      }
+
+      @Override
+      public void changed(String key, String oldValue, String newValue) {
+        changes.add(key + oldValue + "->" + newValue);
+      }
+    });
+    assertEquals(ImmutableList.of("-b2", "+c3", "e5->6"), changes);
+  }
+
+  public void testForEach() {
+    BstMap<String, String> map = (BstMap<String, String>) makePopulatedMap();
+    final List<String> visited = Lists.newArrayList();
+    BstEntryVisitor<String, String> visitor = new BstEntryVisitor<String, String>() {
+      @Override
+      public void visit(String key, String value) {
+        visited.add(key + value);
+      }
+    };
+    map.forEach(visitor);
+    assertEquals(ImmutableList.of("a1", "b2", "d4", "e5"), visited);
+    visited.clear();
+    map.subMap("b", true, "e", false).forEach(visitor);
+    assertEquals(ImmutableList.of("b2", "d4"), visited);
+  }
+
+  public void testSelectAndRank() {
+    BstMap<String, String> map = (BstMap<String, String>) makePopulatedMap();
+    assertEquals("d", map.select(2).getKey());
+    assertEquals(2, map.rank("c"));
+    assertEquals(2, map.rank("d"));
+    BstMap<String, String> tail = map.tailMap("b", false);
+    assertEquals("d", tail.select(0).getKey());
+    assertEquals(0, tail.rank("a"));
+    assertEquals(1, tail.rank("e"));
+    try {
+      tail.select(2);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  public void testFromSorted() {
+    BstMap<String, String> map = BstMap.fromSorted(
+        ImmutableSortedMap.of("a", "1", "b", "2", "d", "4", "e", "5"));
+    assertEquals(makePopulatedMap(), map);
+    assertEquals("d", map.select(2).getKey());
+  }
+
+  public void testShapeIndependentOfInsertionOrder() {
+    BstMap<Integer, String> forward = BstMap.create();
+    BstMap<Integer, String> backward = BstMap.create();
+    for (int i = 0; i < 100; i++) {
+      forward = forward.insert(i, "x");
+      backward = backward.insert(99 - i, "x");
+    }
+    assertEquals(forward.root.getKey(), backward.root.getKey());
+    assertEquals(forward.root.getKey(), BstMap.fromSorted(forward).root.getKey());
+  }
+
+  public void testSplitAndJoin() {
+    BstMap<String, String> map = (BstMap<String, String>) makePopulatedMap();
+    BstMap.Split<String, String> split = map.split("c");
+    assertEquals(ImmutableList.of("a", "b"), ImmutableList.copyOf(split.getBelow().keySet()));
+    assertEquals(ImmutableList.of("d", "e"),
+        ImmutableList.copyOf(split.getAtOrAbove().keySet()));
+    assertEquals(map, BstMap.join(split.getBelow(), split.getAtOrAbove()));
+    assertEquals(ImmutableList.of("a", "e"),
+        ImmutableList.copyOf(map.deleteRange("b", "e").keySet()));
+  }
+
+  public void testSummarize() {
+    BstMonoid<Integer, Integer, Long> sum = new BstMonoid<Integer, Integer, Long>() {
+      @Override
+      public Long identity() {
+        return 0L;
+      }
+
+      @Override
+      public Long summarize(Integer key, Integer value) {
+        return (long) value;
+      }
+
+      @Override
+      public Long combine(Long left, Long right) {
+        return left + right;
+      }
+    };
+    Random random = new Random(0);
+    BstMap<Integer, Integer> map = BstMap.create(Ordering.natural(), sum);
+    TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+    for (int i = 0; i < 1000; i++) {
+      int key = random.nextInt(100);
+      if (random.nextBoolean()) {
+        map = map.insert(key, i);
+        expected.put(key, i);
+      } else {
+        map = map.delete(key);
+        expected.remove(key);
+      }
+      int from = random.nextInt(100);
+      int to = from + random.nextInt(100 - from) + 1;
+      assertEquals(total(expected.subMap(from, to)), map.subMap(from, to).summarize(sum));
+    }
+    assertEquals(total(expected), map.summarize(sum));
+    assertEquals(total(expected.headMap(50)), map.split(50).getBelow().summarize(sum));
+    assertEquals(total(expected.headMap(20)) + total(expected.tailMap(60)),
+        map.deleteRange(20, 60).summarize(sum).longValue());
+    assertEquals(total(expected), BstMap.fromSorted(expected, sum).summarize(sum));
+    try {
+      BstMap.<Integer, Integer> create().summarize(sum);
+      fail();
+    } catch (IllegalArgumentException expectedException) {
+    }
+  }
+
+  private static Long total(Map<Integer, Integer> map) {
+    long total = 0;
+    for (int value : map.values()) {
+      total += value;
+    }
+    return total;
+  }
 }
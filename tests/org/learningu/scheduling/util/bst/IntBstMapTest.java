@@ -0,0 +1,192 @@
+package org.learningu.scheduling.util.bst;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+
+public class IntBstMapTest extends TestCase {
+  public void testAgainstTreeMap() {
+    Random random = new Random(0);
+    IntBstMap<Integer> map = IntBstMap.create();
+    TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+    for (int i = 0; i < 2000; i++) {
+      int key = random.nextInt(200);
+      if (random.nextBoolean()) {
+        map = map.insert(key, i);
+        expected.put(key, i);
+      } else {
+        map = map.delete(key);
+        expected.remove(key);
+      }
+      assertEquals(expected.size(), map.size());
+      int probe = random.nextInt(220) - 10;
+      assertEquals(expected.get(probe), map.get(probe));
+      assertEquals(expected.floorKey(probe), key(map.floorEntry(probe)));
+      assertEquals(expected.ceilingKey(probe), key(map.ceilingEntry(probe)));
+      int to = probe + random.nextInt(50);
+      assertEquals(expected.subMap(probe, to).size(), map.countInRange(probe, to));
+      assertEquals(expected.headMap(probe).size(), map.rank(probe));
+      if (!expected.isEmpty()) {
+        int index = random.nextInt(expected.size());
+        IntTreapNode<Integer> selected = map.select(index);
+        assertEquals(index, map.rank(selected.getKey()));
+        assertEquals(expected.get(selected.getKey()), selected.getValue());
+      }
+    }
+    Iterator<IntTreapNode<Integer>> nodes = map.entryIterator();
+    for (Entry<Integer, Integer> entry : expected.entrySet()) {
+      IntTreapNode<Integer> node = nodes.next();
+      assertEquals(entry.getKey().intValue(), node.getKey());
+      assertEquals(entry.getValue(), node.getValue());
+    }
+    assertFalse(nodes.hasNext());
+
+    final List<Integer> visited = Lists.newArrayList();
+    map.forEach(new IntBstEntryVisitor<Integer>() {
+      @Override
+      public void visit(int key, Integer value) {
+        visited.add(key);
+      }
+    });
+    assertEquals(Lists.newArrayList(expected.keySet()), visited);
+  }
+
+  public void testTransient() {
+    Random random = new Random(1);
+    IntBstMap<Integer> original = IntBstMap.create();
+    for (int i = 0; i < 100; i++) {
+      original = original.insert(random.nextInt(200), i);
+    }
+    String before = original.toString();
+    IntBstMap<Integer> expected = original;
+    IntBstMap.Transient<Integer> trans = original.asTransient();
+    for (int i = 0; i < 1000; i++) {
+      int key = random.nextInt(200);
+      if (random.nextBoolean()) {
+        expected = expected.insert(key, i);
+        trans.insert(key, i);
+      } else {
+        expected = expected.delete(key);
+        trans.delete(key);
+      }
+      assertEquals(expected.size(), trans.size());
+      assertEquals(expected.get(key), trans.get(key));
+    }
+    IntBstMap<Integer> result = trans.persistent();
+    assertEquals(expected.toString(), result.toString());
+    assertEquals(before, original.toString());
+    try {
+      trans.insert(0, 0);
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testSplitJoinAndDeleteRange() {
+    IntBstMap<String> map = IntBstMap.create();
+    for (int i = 0; i < 100; i++) {
+      map = map.insert(2 * i, "v" + i);
+    }
+    IntBstMap.Split<String> split = map.split(51);
+    assertEquals(26, split.getBelow().size());
+    assertEquals(52, split.getAtOrAbove().firstEntry().getKey());
+    assertEquals(map.toString(),
+        IntBstMap.join(split.getBelow(), split.getAtOrAbove()).toString());
+    try {
+      IntBstMap.join(split.getAtOrAbove(), split.getBelow());
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+
+    IntBstMap<String> deleted = map.deleteRange(10, 21);
+    assertEquals(94, deleted.size());
+    assertEquals(8, deleted.floorEntry(20).getKey());
+    assertEquals(22, deleted.ceilingEntry(10).getKey());
+    assertEquals(100, map.size());
+  }
+
+  public void testShapeIndependentOfInsertionOrder() {
+    IntBstMap<String> forward = IntBstMap.create();
+    IntBstMap<String> backward = IntBstMap.create();
+    for (int i = 0; i < 100; i++) {
+      forward = forward.insert(i, "x");
+      backward = backward.insert(99 - i, "x");
+    }
+    final List<String> diffs = Lists.newArrayList();
+    forward.diff(backward, new BstDiffVisitor<Integer, String>() {
+      @Override
+      public void removed(Integer key, String value) {
+        diffs.add("-" + key);
+      }
+
+      @Override
+      public void added(Integer key, String value) {
+        diffs.add("+" + key);
+      }
+
+      @Override
+      public void changed(Integer key, String oldValue, String newValue) {
+        diffs.add(key + "->" + newValue);
+      }
+    });
+    assertEquals(0, diffs.size());
+    assertEquals(forward.root.key, backward.root.key);
+  }
+
+  public void testFromSorted() {
+    int[] keys = new int[50];
+    List<String> values = Lists.newArrayList();
+    IntBstMap<String> inserted = IntBstMap.create();
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = 3 * i;
+      values.add("v" + i);
+      inserted = inserted.insert(3 * i, "v" + i);
+    }
+    IntBstMap<String> built = IntBstMap.fromSorted(keys, values);
+    assertEquals(inserted.toString(), built.toString());
+    assertEquals(inserted.root.key, built.root.key);
+    assertEquals(inserted.root.left.key, built.root.left.key);
+    try {
+      IntBstMap.fromSorted(new int[] {2, 1}, Lists.newArrayList("a", "b"));
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testDiff() {
+    IntBstMap<Integer> before = IntBstMap.create();
+    for (int i = 0; i < 5; i++) {
+      before = before.insert(i, i);
+    }
+    IntBstMap<Integer> after = before.delete(1).insert(2, 6).insert(7, 7);
+    final List<String> diffs = Lists.newArrayList();
+    before.diff(after, new BstDiffVisitor<Integer, Integer>() {
+      @Override
+      public void removed(Integer key, Integer value) {
+        diffs.add("-" + key);
+      }
+
+      @Override
+      public void added(Integer key, Integer value) {
+        diffs.add("+" + key);
+      }
+
+      @Override
+      public void changed(Integer key, Integer oldValue, Integer newValue) {
+        diffs.add(key + ":" + oldValue + "->" + newValue);
+      }
+    });
+    assertEquals(Lists.newArrayList("-1", "2:2->6", "+7"), diffs);
+  }
+
+  private static Integer key(IntTreapNode<?> node) {
+    return (node == null) ? null : node.getKey();
+  }
+}